@@ -0,0 +1,143 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.model.AuthorizationResult;
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.service.AuthorizationService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AuthorizationService#authorizeTransaction(Transaction)} completo contra o H2: busca do
+ * comerciante na trie, classificacao do MCC, debito no ledger e registro no journal (o writer
+ * grava no banco em background durante a medicao).
+ *
+ * - O prazo da autorizacao e folgado (10s), como no {@link DebitStrategyBenchmark}; as
+ *   respostas diferentes de 00 sao contadas a parte (declined), e uma rodada com declined > 0
+ *   nao mediu so o caminho aprovado.
+ *
+ * - SAME_CATEGORY: todas as threads debitam a mesma carteira (conta e categoria), o pior caso
+ *   de disputa.
+ *
+ * - SPREAD: cada thread usa a sua conta e alterna entre FOOD, MEAL e CASH.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorizationPipelineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        @Param({"SAME_CATEGORY", "SPREAD"})
+        String distribution;
+
+        ConfigurableApplicationContext context;
+        AuthorizationService authorizationService;
+
+        @Setup(Level.Trial)
+        public void start() {
+            // Prazo folgado: mede o custo do caminho, nao quantas respostas saem em 100ms
+            context = BenchmarkContext.start(Map.of("autorizador.authorization.timeout-ms", "10000"));
+            authorizationService = context.getBean(AuthorizationService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+
+        private String account;
+        private boolean spread;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(Application application, ThreadParams threadParams) {
+            spread = "SPREAD".equals(application.distribution);
+            account = BenchmarkContext.account(spread ? threadParams.getThreadIndex() % BenchmarkContext.ACCOUNTS : 0);
+        }
+
+        Transaction nextTransaction() {
+            // Uma transacao nova por chamada, como a desserializada do corpo da requisicao
+            Transaction transaction = new Transaction();
+            transaction.setAccount(account);
+            transaction.setMcc(spread ? BenchmarkContext.MCCS[next++ % BenchmarkContext.MCCS.length] : BenchmarkContext.MCCS[0]);
+            transaction.setMerchant("PADARIA BENCHMARK");
+            transaction.setAmount(1);
+            return transaction;
+        }
+    }
+
+    /**
+     * Respostas por codigo, somadas por iteracao no relatorio do JMH.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Results {
+
+        public long approved;
+        public long declined;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            approved = 0;
+            declined = 0;
+        }
+
+        AuthorizationResult count(AuthorizationResult result) {
+            if (result == AuthorizationResult.APPROVED) {
+                approved++;
+            } else {
+                declined++;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AuthorizationResult authorize1Thread(Application application, Requests requests, Results results) {
+        return results.count(application.authorizationService.authorizeTransaction(requests.nextTransaction()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AuthorizationResult authorize4Threads(Application application, Requests requests, Results results) {
+        return results.count(application.authorizationService.authorizeTransaction(requests.nextTransaction()));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public AuthorizationResult authorize16Threads(Application application, Requests requests, Results results) {
+        return results.count(application.authorizationService.authorizeTransaction(requests.nextTransaction()));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public AuthorizationResult authorize64Threads(Application application, Requests requests, Results results) {
+        return results.count(application.authorizationService.authorizeTransaction(requests.nextTransaction()));
+    }
+}
@@ -0,0 +1,68 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.AutorizadorApplication;
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sobe a aplicacao real (H2 em memoria, ledger, journal) sem o servidor web, para os
+ * benchmarks que passam pelos beans do Spring.
+ */
+final class BenchmarkContext {
+
+    static final int ACCOUNTS = 64;
+
+    static final String[] CATEGORIES = {"FOOD", "MEAL", BenefitCategory.CASH_CATEGORY};
+
+    /** Um MCC de cada categoria das regras iniciais (o ultimo nao tem regra e cai em CASH). */
+    static final String[] MCCS = {"5411", "5811", "1234"};
+
+    // Saldo que nenhuma rodada de benchmark consegue esgotar, para medir sempre o caminho aprovado
+    private static final long BALANCE = Long.MAX_VALUE / 4;
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return start(Map.of());
+    }
+
+    /**
+     * Sobe com propriedades extras (ex.: a estrategia de debito). O banco segue o perfil ativo:
+     * -Dspring.profiles.active=postgres usa o Postgres do docker-compose.
+     */
+    static ConfigurableApplicationContext start(Map<String, Object> properties) {
+        SpringApplication application = new SpringApplication(AutorizadorApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        Map<String, Object> defaults = new HashMap<>(properties);
+        defaults.put("spring.jpa.show-sql", "false");
+        defaults.put("logging.level.root", "WARN");
+        application.setDefaultProperties(defaults);
+        ConfigurableApplicationContext context = application.run();
+
+        // Carteiras dedicadas ao benchmark, ja no banco para o writer do journal aplicar os debitos
+        List<BenefitCategory> wallets = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            for (String category : CATEGORIES) {
+                wallets.add(new BenefitCategory(account(i), category, BALANCE));
+            }
+        }
+        BenefitCategoryRepository benefitCategoryRepository = context.getBean(BenefitCategoryRepository.class);
+        benefitCategoryRepository.saveAll(wallets);
+        context.getBean(BalanceLedger.class).load(benefitCategoryRepository.findAll());
+        return context;
+    }
+
+    static String account(int index) {
+        return "bench-" + index;
+    }
+}
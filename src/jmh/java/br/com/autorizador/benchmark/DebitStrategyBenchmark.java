@@ -0,0 +1,103 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.model.AuthorizationResult;
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.service.AuthorizationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autorizacao completa com cada estrategia de debito (autorizador.authorization.debit-strategy).
+ *
+ * - SAME_WALLET: todas as threads debitam a mesma carteira, o caso em que o lock de linha do
+ *   PESSIMISTIC e o UPDATE condicional disputam a mesma linha.
+ *
+ * - SPREAD: cada thread debita a carteira FOOD da sua conta.
+ *
+ * Roda no H2 por padrao; para o Postgres do docker-compose:
+ * -Djmh.args="-jvmArgsAppend -Dspring.profiles.active=postgres".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DebitStrategyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        @Param({"LEDGER", "PESSIMISTIC", "CONDITIONAL"})
+        String strategy;
+
+        @Param({"SAME_WALLET", "SPREAD"})
+        String distribution;
+
+        ConfigurableApplicationContext context;
+        AuthorizationService authorizationService;
+
+        @Setup(Level.Trial)
+        public void start() {
+            // Prazo folgado: mede o custo de cada estrategia, nao quantas respostas saem em 100ms
+            context = BenchmarkContext.start(Map.of(
+                    "autorizador.authorization.debit-strategy", strategy,
+                    "autorizador.authorization.timeout-ms", "10000"));
+            authorizationService = context.getBean(AuthorizationService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+
+        private String account;
+
+        @Setup(Level.Trial)
+        public void setUp(Application application, ThreadParams threadParams) {
+            boolean spread = "SPREAD".equals(application.distribution);
+            account = BenchmarkContext.account(spread ? threadParams.getThreadIndex() % BenchmarkContext.ACCOUNTS : 0);
+        }
+
+        Transaction nextTransaction() {
+            Transaction transaction = new Transaction();
+            transaction.setAccount(account);
+            transaction.setMcc(BenchmarkContext.MCCS[0]);
+            transaction.setMerchant("PADARIA BENCHMARK");
+            transaction.setAmount(1);
+            return transaction;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AuthorizationResult authorize1Thread(Application application, Requests requests) {
+        return application.authorizationService.authorizeTransaction(requests.nextTransaction());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public AuthorizationResult authorize16Threads(Application application, Requests requests) {
+        return application.authorizationService.authorizeTransaction(requests.nextTransaction());
+    }
+}
@@ -0,0 +1,67 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.BenefitCategory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo do fallback para CASH no ledger: debito direto na categoria contra o debito que
+ * encontra a categoria sem saldo e cai no CASH no mesmo passo da shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedgerDebitBenchmark {
+
+    private static final long BALANCE = Long.MAX_VALUE / 4;
+
+    private BalanceLedger ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ledger = new BalanceLedger(4);
+        // "funded" sempre tem saldo FOOD; "empty" nunca tem e sempre cai no CASH
+        ledger.load(List.of(
+                new BenefitCategory("funded", "FOOD", BALANCE),
+                new BenefitCategory("funded", BenefitCategory.CASH_CATEGORY, BALANCE),
+                new BenefitCategory("empty", "FOOD", 0),
+                new BenefitCategory("empty", BenefitCategory.CASH_CATEGORY, BALANCE)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        ledger.shutdown();
+    }
+
+    @Benchmark
+    public BalanceLedger.DebitResult debit() {
+        return ledger.debit("funded", "FOOD", 1, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public BalanceLedger.DebitResult debitWithCashFallbackNotNeeded() {
+        return ledger.debitWithCashFallback("funded", "FOOD", 1, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public BalanceLedger.DebitResult debitWithCashFallbackTaken() {
+        return ledger.debitWithCashFallback("empty", "FOOD", 1, Long.MAX_VALUE);
+    }
+}
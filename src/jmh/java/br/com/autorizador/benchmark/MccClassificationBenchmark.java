@@ -0,0 +1,46 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.model.MccRule;
+import br.com.autorizador.service.MccClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classificacao do MCC em categoria (o antigo determineCategoryByMcc), com as mesmas regras
+ * da carga inicial e uma mistura de MCCs com regra, sem regra e invalidos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MccClassificationBenchmark {
+
+    private static final String[] MCCS = {"5411", "5412", "5811", "5812", "1234", "9999", null, "54"};
+
+    private MccClassifier mccClassifier;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        mccClassifier = new MccClassifier();
+        mccClassifier.compile(List.of(new MccRule(5411, 5412, "FOOD"), new MccRule(5811, 5812, "MEAL")));
+    }
+
+    @Benchmark
+    public String classify() {
+        return mccClassifier.classify(MCCS[next++ & (MCCS.length - 1)]);
+    }
+}
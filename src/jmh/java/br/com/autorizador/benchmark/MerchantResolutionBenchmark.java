@@ -0,0 +1,55 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.service.MerchantMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolucao do comerciante pelo {@link MerchantMatcher} (normalizacao do nome durante a busca
+ * do prefixo mais longo na trie), com um comerciante mapeado e um sem mapeamento.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MerchantResolutionBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private MerchantMatcher merchantMatcher;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start();
+        merchantMatcher = context.getBean(MerchantMatcher.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public String mappedMerchant() {
+        return merchantMatcher.match("  Grocery   Store    SAO PAULO BR");
+    }
+
+    @Benchmark
+    public String unmappedMerchant() {
+        return merchantMatcher.match("PADARIA BENCHMARK");
+    }
+}
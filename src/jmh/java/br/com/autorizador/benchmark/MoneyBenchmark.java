@@ -0,0 +1,66 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminho de debito com double (parse do valor, comparacao e subtracao, como era antes)
+ * contra o mesmo caminho em centavos long com {@link Money#parseCents(char[], int, int)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final String[] AMOUNTS = {"49.99", "100.00", "0.01", "12.3", "250", "7.05", "1999.90", "0.10"};
+
+    private char[][] amountChars;
+    private int next;
+
+    private double doubleBalance;
+    private long centsBalance;
+
+    @Setup
+    public void setUp() {
+        amountChars = new char[AMOUNTS.length][];
+        for (int i = 0; i < AMOUNTS.length; i++) {
+            amountChars[i] = AMOUNTS[i].toCharArray();
+        }
+        doubleBalance = 1_000_000_000.0;
+        centsBalance = 100_000_000_000L;
+    }
+
+    @Benchmark
+    public double debitWithDouble() {
+        char[] chars = amountChars[next++ & (AMOUNTS.length - 1)];
+        double amount = Double.parseDouble(new String(chars));
+        if (doubleBalance >= amount) {
+            doubleBalance = doubleBalance - amount;
+        }
+        return doubleBalance;
+    }
+
+    @Benchmark
+    public long debitWithCents() {
+        char[] chars = amountChars[next++ & (AMOUNTS.length - 1)];
+        long amount = Money.parseCents(chars, 0, chars.length);
+        if (centsBalance >= amount) {
+            centsBalance = centsBalance - amount;
+        }
+        return centsBalance;
+    }
+}
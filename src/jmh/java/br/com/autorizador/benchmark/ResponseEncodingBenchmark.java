@@ -0,0 +1,90 @@
+package br.com.autorizador.benchmark;
+
+import br.com.autorizador.config.AuthorizationResultHttpMessageConverter;
+import br.com.autorizador.controller.TransactionController;
+import br.com.autorizador.model.AuthorizationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codificacao das respostas do {@link TransactionController} ate os bytes do corpo HTTP,
+ * pelo {@link AuthorizationResultHttpMessageConverter}: o codigo unico, o lote de 100
+ * codigos e a resposta de erro.
+ *
+ * O corpo e escrito em um buffer reutilizado, no papel do buffer do servlet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseEncodingBenchmark {
+
+    private final AuthorizationResultHttpMessageConverter converter = new AuthorizationResultHttpMessageConverter();
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+
+    private final HttpOutputMessage message = new HttpOutputMessage() {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    };
+
+    private AuthorizationResult[] batchResults;
+
+    @Setup
+    public void setUp() {
+        batchResults = new AuthorizationResult[100];
+        for (int i = 0; i < batchResults.length; i++) {
+            batchResults[i] = i % 10 == 0 ? AuthorizationResult.INSUFFICIENT_FUNDS : AuthorizationResult.APPROVED;
+        }
+    }
+
+    @Benchmark
+    public int singleResponse() throws IOException {
+        return write(AuthorizationResult.APPROVED);
+    }
+
+    @Benchmark
+    public int batchResponse() throws IOException {
+        return write(batchResults);
+    }
+
+    @Benchmark
+    public int errorResponse() throws IOException {
+        return write(AuthorizationResult.PROCESSING_ERROR);
+    }
+
+    private int write(Object result) throws IOException {
+        body.reset();
+        message.getHeaders().clear();
+        converter.write(result, MediaType.APPLICATION_JSON, message);
+        return body.size();
+    }
+}
@@ -0,0 +1,271 @@
+package br.com.autorizador.loadtest;
+
+import br.com.autorizador.AutorizadorApplication;
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gerador de carga em malha aberta para /transactions/authorize.
+ *
+ * - Os envios sao agendados em instantes fixos (--rps por segundo), independentes das
+ *   respostas; no maximo --concurrency requisicoes ficam em voo. Quando o servidor atrasa, os
+ *   envios seguintes esperam, e essa espera entra na latencia: ela e medida a partir do
+ *   instante agendado (correcao de coordinated omission). A latencia medida a partir do envio
+ *   real tambem e reportada, para comparacao.
+ *
+ * - Os corpos vem de um arquivo JSONL (--payloads, uma requisicao por linha, usadas em ciclo;
+ *   linhas repetidas pesam mais na mistura). Sem arquivo, usa loadtest-payloads.jsonl.
+ *
+ * - Sem --url, sobe a aplicacao no mesmo processo (porta aleatoria) com carteiras de saldo
+ *   inesgotavel para as contas load-0 a load-63; propriedades de sistema (ex.:
+ *   -Dspring.datasource.hikari.maximum-pool-size=20, via loadtest.jvmArgs no Maven) valem
+ *   para ela.
+ *
+ * - O relatorio traz vazao, percentis (p50, p90, p99, p99.9, max) e a distribuicao dos codigos
+ *   de resposta; o histograma corrigido vai para --histogram (formato .hgrm do HdrHistogram).
+ */
+public final class LoadGenerator {
+
+    private static final String DEFAULT_PAYLOADS = "loadtest-payloads.jsonl";
+    private static final int ACCOUNTS = 64;
+    private static final long BALANCE = Long.MAX_VALUE / 4;
+
+    // Latencias de 1 microssegundo a 1 minuto, 3 digitos significativos
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, String> options;
+    private final ConcurrentHistogram corrected = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+    private final ConcurrentHistogram uncorrected = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+    private final Map<String, LongAdder> codes = new ConcurrentHashMap<>();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            // --nome=valor ou nome=valor (o segundo cabe em -Dloadtest.args no Maven)
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separator = option.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Argumento invalido (esperado nome=valor): " + arg);
+            }
+            options.put(option.substring(0, separator), option.substring(separator + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws Exception {
+        int rps = Integer.parseInt(options.getOrDefault("rps", "1000"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        List<byte[]> payloads = loadPayloads(options.get("payloads"));
+
+        ConfigurableApplicationContext context = null;
+        String url = options.get("url");
+        if (url == null) {
+            context = startEmbedded();
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            url = "http://localhost:" + port + "/transactions/authorize";
+        }
+
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            URI uri = URI.create(url);
+            System.out.printf("Alvo %s: %d req/s, ate %d em voo, %ds de aquecimento + %ds medidos, %d corpos%n",
+                    url, rps, concurrency, warmupSeconds, durationSeconds, payloads.size());
+
+            drive(client, uri, payloads, rps, concurrency, TimeUnit.SECONDS.toNanos(warmupSeconds));
+            reset();
+            long elapsed = drive(client, uri, payloads, rps, concurrency, TimeUnit.SECONDS.toNanos(durationSeconds));
+            report(System.out, elapsed);
+
+            String histogram = options.getOrDefault("histogram", "target/loadtest-latency.hgrm");
+            Path path = Path.of(histogram).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            try (PrintStream out = new PrintStream(Files.newOutputStream(path), false, StandardCharsets.UTF_8)) {
+                corrected.outputPercentileDistribution(out, 1_000_000.0);
+            }
+            System.out.println("Histograma corrigido (ms) em " + path);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * Dispara requisicoes nos instantes agendados durante a fase e espera as que ficaram em voo;
+     * devolve a duracao da fase em nanos.
+     */
+    private long drive(HttpClient client, URI uri, List<byte[]> payloads, int rps, int concurrency, long phaseNanos)
+            throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(rps, 1);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long intended = start + i * interval;
+                if (intended - start >= phaseNanos) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // Bloqueia o agendador quando tudo esta em voo: o atraso aparece na latencia corrigida
+                inFlight.acquire();
+                byte[] payload = payloads.get((int) (i % payloads.size()));
+                executor.execute(() -> {
+                    try {
+                        send(client, uri, payload, intended);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void send(HttpClient client, URI uri, byte[] payload, long intended) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+        long sent = System.nanoTime();
+        String code;
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            code = response.statusCode() == 200 ? codeOf(response.body()) : "HTTP " + response.statusCode();
+        } catch (IOException e) {
+            code = e.getClass().getSimpleName();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long done = System.nanoTime();
+        corrected.recordValue(Math.min(done - intended, HIGHEST_LATENCY));
+        uncorrected.recordValue(Math.min(done - sent, HIGHEST_LATENCY));
+        codes.computeIfAbsent(code, key -> new LongAdder()).increment();
+    }
+
+    // {"code": "00"} -> 00
+    private static String codeOf(String body) {
+        int key = body.indexOf("\"code\"");
+        int start = key < 0 ? -1 : body.indexOf('"', body.indexOf(':', key) + 1);
+        int end = start < 0 ? -1 : body.indexOf('"', start + 1);
+        return end < 0 ? "?" : body.substring(start + 1, end);
+    }
+
+    private void reset() {
+        corrected.reset();
+        uncorrected.reset();
+        codes.clear();
+    }
+
+    private void report(PrintStream out, long elapsedNanos) {
+        long count = corrected.getTotalCount();
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%nRespostas: %d em %.1fs (%.0f req/s)%n", count, seconds, count / seconds);
+        out.printf("%-22s %10s %10s %10s %10s %10s%n", "Latencia (ms)", "p50", "p90", "p99", "p99.9", "max");
+        printPercentiles(out, "corrigida (agendado)", corrected);
+        printPercentiles(out, "sem correcao (envio)", uncorrected);
+        out.println("Codigos:");
+        new TreeMap<>(codes).forEach((code, total) ->
+                out.printf("  %-20s %10d (%5.1f%%)%n", code, total.sum(), count == 0 ? 0 : 100.0 * total.sum() / count));
+    }
+
+    private static void printPercentiles(PrintStream out, String label, Histogram histogram) {
+        out.printf("%-22s %10.3f %10.3f %10.3f %10.3f %10.3f%n", label,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static List<byte[]> loadPayloads(String file) throws IOException {
+        List<String> lines;
+        if (file != null) {
+            lines = Files.readAllLines(Path.of(file));
+        } else {
+            try (InputStream in = LoadGenerator.class.getClassLoader().getResourceAsStream(DEFAULT_PAYLOADS)) {
+                if (in == null) {
+                    throw new IOException(DEFAULT_PAYLOADS + " nao encontrado no classpath");
+                }
+                lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+            }
+        }
+        List<byte[]> payloads = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.isBlank()) {
+                payloads.add(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (payloads.isEmpty()) {
+            throw new IllegalArgumentException("Nenhuma requisicao no arquivo de payloads");
+        }
+        return payloads;
+    }
+
+    private static ConfigurableApplicationContext startEmbedded() {
+        // Com o devtools no classpath, a subida a partir do main reiniciaria este main sem os argumentos
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        SpringApplication application = new SpringApplication(AutorizadorApplication.class);
+        application.setDefaultProperties(Map.of(
+                "server.port", "0",
+                "spring.jpa.show-sql", "false",
+                "logging.level.root", "WARN"));
+        ConfigurableApplicationContext context = application.run();
+
+        List<BenefitCategory> wallets = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            for (String category : new String[]{"FOOD", "MEAL", BenefitCategory.CASH_CATEGORY}) {
+                wallets.add(new BenefitCategory("load-" + i, category, BALANCE));
+            }
+        }
+        BenefitCategoryRepository benefitCategoryRepository = context.getBean(BenefitCategoryRepository.class);
+        benefitCategoryRepository.saveAll(wallets);
+        context.getBean(BalanceLedger.class).load(benefitCategoryRepository.findAll());
+        return context;
+    }
+}
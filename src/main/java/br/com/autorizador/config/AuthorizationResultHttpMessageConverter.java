@@ -0,0 +1,103 @@
+package br.com.autorizador.config;
+
+import br.com.autorizador.model.AuthorizationResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Escreve {@link AuthorizationResult} (e o array de resultados do lote) direto no corpo da
+ * resposta a partir dos bytes pre-codificados, sem passar por String nem pelo Jackson.
+ *
+ * Os cabecalhos Content-Type e Content-Length das respostas unitarias tambem sao montados uma
+ * vez, em vez de formatados a cada resposta. Registrado como bean, o Spring Boot coloca este
+ * conversor na frente dos conversores padrao.
+ */
+@Component
+public class AuthorizationResultHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_SEPARATOR = {',', ' '};
+    private static final byte[] ARRAY_END = {']'};
+
+    private static final String CONTENT_TYPE = MediaType.APPLICATION_JSON_VALUE;
+
+    private static final String[] CONTENT_LENGTHS = new String[AuthorizationResult.values().length];
+
+    static {
+        for (AuthorizationResult result : AuthorizationResult.values()) {
+            CONTENT_LENGTHS[result.ordinal()] = Integer.toString(result.bodyLength());
+        }
+    }
+
+    public AuthorizationResultHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return AuthorizationResult.class.isAssignableFrom(clazz) || AuthorizationResult[].class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("AuthorizationResult e somente escrita", inputMessage);
+    }
+
+    @Override
+    protected void addDefaultHeaders(HttpHeaders headers, Object result, MediaType contentType) {
+        if (headers.getFirst(HttpHeaders.CONTENT_TYPE) == null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, CONTENT_TYPE);
+        }
+        if (headers.getFirst(HttpHeaders.CONTENT_LENGTH) == null && headers.getFirst(HttpHeaders.TRANSFER_ENCODING) == null) {
+            if (result instanceof AuthorizationResult single) {
+                headers.set(HttpHeaders.CONTENT_LENGTH, CONTENT_LENGTHS[single.ordinal()]);
+            } else {
+                headers.setContentLength(getContentLength(result, contentType));
+            }
+        }
+    }
+
+    @Override
+    protected Long getContentLength(Object result, MediaType contentType) {
+        if (result instanceof AuthorizationResult single) {
+            return (long) single.bodyLength();
+        }
+        AuthorizationResult[] results = (AuthorizationResult[]) result;
+        long length = ARRAY_START.length + ARRAY_END.length;
+        for (int i = 0; i < results.length; i++) {
+            length += results[i].bodyLength() + (i > 0 ? ARRAY_SEPARATOR.length : 0);
+        }
+        return length;
+    }
+
+    @Override
+    protected void writeInternal(Object result, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream body = outputMessage.getBody();
+        if (result instanceof AuthorizationResult single) {
+            single.writeTo(body);
+            return;
+        }
+        AuthorizationResult[] results = (AuthorizationResult[]) result;
+        body.write(ARRAY_START);
+        for (int i = 0; i < results.length; i++) {
+            if (i > 0) {
+                body.write(ARRAY_SEPARATOR);
+            }
+            results[i].writeTo(body);
+        }
+        body.write(ARRAY_END);
+    }
+}
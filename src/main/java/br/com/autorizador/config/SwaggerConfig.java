@@ -5,8 +5,11 @@
     import org.springdoc.core.GroupedOpenApi;
     import org.springframework.context.annotation.Bean;
     import org.springframework.context.annotation.Configuration;
+    import org.springframework.context.annotation.Profile;
 
+    // Fora do perfil prod: a documentacao da API nao e servida em producao
     @Configuration
+    @Profile("!prod")
     public class SwaggerConfig {
 
         @Bean
@@ -0,0 +1,67 @@
+package br.com.autorizador.controller;
+
+import br.com.autorizador.service.MerchantMappingImporter;
+import br.com.autorizador.service.MerchantMatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Carga dos mapeamentos de comerciantes usados para corrigir o MCC, sem reiniciar a aplicacao.
+ */
+@RestController
+@RequestMapping("/merchant-mappings")
+public class MerchantMappingController {
+
+    private static final String TEXT_CSV = "text/csv";
+
+    @Autowired
+    private MerchantMappingImporter merchantMappingImporter;
+
+    @Autowired
+    private MerchantMatcher merchantMatcher;
+
+    /**
+     * Importa um CSV (merchant,correctedMcc); com replace=true a tabela e substituida pelo
+     * arquivo, senao os nomes do arquivo sao inseridos ou atualizados.
+     */
+    @PostMapping(value = "/import", consumes = TEXT_CSV)
+    public ResponseEntity<Map<String, Integer>> importCsv(InputStream body, @RequestParam(defaultValue = "false") boolean replace)
+            throws IOException {
+        return imported(merchantMappingImporter.importMappings(body, MerchantMappingImporter.Format.CSV, replace));
+    }
+
+    /**
+     * Como o CSV, com um objeto {"merchant": "...", "correctedMcc": "..."} por linha.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Map<String, Integer>> importJsonLines(InputStream body, @RequestParam(defaultValue = "false") boolean replace)
+            throws IOException {
+        return imported(merchantMappingImporter.importMappings(body, MerchantMappingImporter.Format.JSONL, replace));
+    }
+
+    /**
+     * Recompila a trie a partir da tabela merchant_mapping (ex.: depois de alterar a tabela
+     * direto no banco), sem esperar a recarga periodica.
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Integer>> reload() {
+        merchantMatcher.reload();
+        return new ResponseEntity<>(Map.of("merchants", merchantMatcher.size()), HttpStatus.OK);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException ex) {
+        return new ResponseEntity<>(Map.of("error", ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    private ResponseEntity<Map<String, Integer>> imported(int imported) {
+        return new ResponseEntity<>(Map.of("imported", imported, "merchants", merchantMatcher.size()), HttpStatus.OK);
+    }
+}
@@ -1,26 +1,114 @@
 package br.com.autorizador.controller;
 
+import br.com.autorizador.journal.TransactionJournal;
+import br.com.autorizador.model.AuthorizationOutcome;
+import br.com.autorizador.model.AuthorizationResult;
 import br.com.autorizador.model.Transaction;
+import br.com.autorizador.service.AdmissionLimiter;
+import br.com.autorizador.service.AuthorizationMetrics;
 import br.com.autorizador.service.AuthorizationService;
+import br.com.autorizador.service.Deadline;
+import br.com.autorizador.service.StartupWarmUp;
+import br.com.autorizador.service.TransactionStreamAuthorizer;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 @RestController
 @RequestMapping("/transactions")
 public class TransactionController {
 
+    private static final Logger log = LoggerFactory.getLogger(TransactionController.class);
+
     @Autowired
     private AuthorizationService authorizationService;
 
+    @Autowired
+    private AdmissionLimiter admissionLimiter;
+
+    @Autowired
+    private AuthorizationMetrics authorizationMetrics;
+
+    @Autowired
+    private StartupWarmUp startupWarmUp;
+
+    @Autowired
+    private TransactionStreamAuthorizer transactionStreamAuthorizer;
+
+    @Autowired
+    private TransactionJournal transactionJournal;
+
+    @Value("${autorizador.batch.max-size:1000}")
+    private int maxBatchSize;
+
     @PostMapping("/authorize")
-    public ResponseEntity<String> authorizeTransaction(@RequestBody Transaction transaction) {
-        String responseCodeJson = authorizationService.authorizeTransaction(transaction);
-        return new ResponseEntity<>(responseCodeJson, HttpStatus.OK);
+    public ResponseEntity<AuthorizationResult> authorizeTransaction(@RequestBody Transaction transaction) {
+        Deadline deadline = authorizationService.newDeadline();
+        startupWarmUp.recordRequest();
+        if (!admissionLimiter.tryAcquire(deadline)) {
+            authorizationMetrics.recordResponse(null, AuthorizationOutcome.OVERLOAD);
+            return new ResponseEntity<>(AuthorizationOutcome.OVERLOAD.getResult(), HttpStatus.OK);  // Sobrecarga: recusar rapido
+        }
+        try {
+            AuthorizationResult result = authorizationService.authorizeTransaction(transaction, deadline);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } finally {
+            admissionLimiter.release();
+        }
+    }
+
+    /**
+     * Autoriza um lote de transacoes; a resposta traz um codigo por item, na mesma ordem do lote.
+     *
+     * O lote e gravado no journal de uma vez, entao nao pode passar de autorizador.batch.max-size
+     * nem da capacidade do journal (autorizador.journal.capacity); um lote maior responde 400
+     * sem autorizar nada (lotes grandes devem ir pelo fluxo NDJSON).
+     */
+    @PostMapping("/authorize/batch")
+    public ResponseEntity<AuthorizationResult[]> authorizeTransactions(@RequestBody List<Transaction> transactions) {
+        int limit = Math.min(maxBatchSize, transactionJournal.capacity());
+        if (transactions.size() > limit) {
+            log.debug("Lote de {} transacoes recusado; o maximo e {}", transactions.size(), limit);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Deadline deadline = authorizationService.newDeadline();
+        startupWarmUp.recordRequest();
+        if (!admissionLimiter.tryAcquire(deadline)) {
+            AuthorizationResult[] rejected = new AuthorizationResult[transactions.size()];
+            Arrays.fill(rejected, AuthorizationOutcome.OVERLOAD.getResult());
+            for (int i = 0; i < transactions.size(); i++) {
+                authorizationMetrics.recordResponse(null, AuthorizationOutcome.OVERLOAD);
+            }
+            return new ResponseEntity<>(rejected, HttpStatus.OK);
+        }
+        try {
+            List<AuthorizationResult> results = authorizationService.authorizeTransactions(transactions, deadline);
+            return new ResponseEntity<>(results.toArray(new AuthorizationResult[0]), HttpStatus.OK);
+        } finally {
+            admissionLimiter.release();
+        }
+    }
+
+    /**
+     * Autoriza um fluxo NDJSON (uma transacao por linha) e responde em NDJSON, um codigo por
+     * linha na ordem de entrada, escrito a medida que os blocos sao autorizados.
+     */
+    @PostMapping(value = "/authorize/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void authorizeStream(InputStream body, HttpServletResponse response) throws IOException {
+        startupWarmUp.recordRequest();
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        transactionStreamAuthorizer.authorize(body, response.getOutputStream());
     }
 
     /**
@@ -35,9 +123,10 @@ public class TransactionController {
 
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<Map<String, String>> handleError(Exception ex) {
-        Map<String, String> responseBody = new HashMap<>();
-        responseBody.put("code", "07");
-        return new ResponseEntity<>(responseBody, HttpStatus.OK);
+    public ResponseEntity<AuthorizationResult> handleError(Exception ex) {
+        // Normalmente corpo invalido (JSON malformado, valor com mais de duas casas...)
+        log.debug("Requisicao de autorizacao rejeitada", ex);
+        authorizationMetrics.recordResponse(null, AuthorizationOutcome.EXCEPTION);
+        return new ResponseEntity<>(AuthorizationOutcome.EXCEPTION.getResult(), HttpStatus.OK);
     }
 }
\ No newline at end of file
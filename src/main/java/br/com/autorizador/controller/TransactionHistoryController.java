@@ -0,0 +1,56 @@
+package br.com.autorizador.controller;
+
+import br.com.autorizador.model.TransactionPage;
+import br.com.autorizador.model.TransactionStatus;
+import br.com.autorizador.repository.TransactionHistoryQuery;
+import br.com.autorizador.service.TransactionHistoryBusyException;
+import br.com.autorizador.service.TransactionHistoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Consulta do historico, separada do {@link TransactionController}: erros aqui sao respondidos
+ * com status HTTP, nao com o codigo 07 das autorizacoes.
+ */
+@RestController
+@RequestMapping("/transactions")
+public class TransactionHistoryController {
+
+    @Autowired
+    private TransactionHistoryService transactionHistoryService;
+
+    /**
+     * Transacoes aprovadas da mais recente para a mais antiga. Exige account, category ou
+     * merchant; para a proxima pagina, repetir os filtros com o nextCursor recebido.
+     */
+    @GetMapping
+    public ResponseEntity<TransactionPage> findTransactions(
+            @RequestParam(required = false) String account,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String merchant,
+            @RequestParam(required = false) TransactionStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        TransactionHistoryQuery.Filter filter = new TransactionHistoryQuery.Filter(account, category, merchant, status, from, to);
+        return new ResponseEntity<>(transactionHistoryService.find(filter, cursor, limit), HttpStatus.OK);
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, MethodArgumentTypeMismatchException.class})
+    public ResponseEntity<Map<String, String>> handleBadRequest(Exception ex) {
+        return new ResponseEntity<>(Map.of("error", ex.getMessage()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(TransactionHistoryBusyException.class)
+    public ResponseEntity<Map<String, String>> handleBusy(TransactionHistoryBusyException ex) {
+        return new ResponseEntity<>(Map.of("error", ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
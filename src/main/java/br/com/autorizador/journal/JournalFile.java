@@ -0,0 +1,240 @@
+package br.com.autorizador.journal;
+
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.model.TransactionStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Arquivo local append-only com as transacoes aprovadas, gravado antes da resposta ao cliente.
+ *
+ * Cada registro e [int tamanho][payload][int crc32 do payload]; os textos do payload sao
+ * [short tamanho][UTF-8], entao um campo com mais de {@link #MAX_FIELD_BYTES} bytes e
+ * recusado antes de qualquer escrita. Na leitura, um registro
+ * incompleto ou com CRC invalido no fim do arquivo (escrita interrompida por um crash) e
+ * descartado junto com tudo o que vem depois dele.
+ *
+ * Uma gravacao que falha no meio (escrita curta, disco cheio, erro no fsync) e desfeita:
+ * o arquivo volta ao tamanho anterior antes do erro ser propagado, para que os registros
+ * seguintes nao fiquem depois de bytes rasgados (e sejam descartados na leitura). Se nem
+ * isso for possivel, o arquivo recusa novas gravacoes.
+ *
+ * A chave de idempotencia, o momento da aprovacao e a situacao ficam no fim do payload;
+ * registros gravados antes deles existirem sao lidos sem esses campos.
+ */
+class JournalFile implements Closeable {
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int TRAILER_SIZE = Integer.BYTES;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    static final int MAX_FIELD_BYTES = Short.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final boolean fsync;
+    private final CRC32 crc = new CRC32();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    // Uma gravacao falhou e nao foi possivel desfaze-la
+    private boolean broken;
+
+    JournalFile(Path path, boolean fsync) throws IOException {
+        this(open(path), fsync);
+    }
+
+    JournalFile(FileChannel channel, boolean fsync) throws IOException {
+        this.channel = channel;
+        this.channel.position(channel.size());
+        this.fsync = fsync;
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Le todos os registros validos e remove do arquivo uma eventual cauda corrompida.
+     */
+    List<Transaction> readAll() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        long size = channel.size();
+        if (size == 0) {
+            return transactions;
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int validEnd = 0;
+        while (mapped.remaining() >= HEADER_SIZE) {
+            int length = mapped.getInt();
+            if (length <= 0 || mapped.remaining() < length + TRAILER_SIZE) {
+                break;
+            }
+            ByteBuffer payload = mapped.slice(mapped.position(), length);
+            mapped.position(mapped.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != mapped.getInt()) {
+                break;
+            }
+            transactions.add(decode(payload));
+            validEnd = mapped.position();
+        }
+        if (validEnd < size) {
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+        return transactions;
+    }
+
+    /**
+     * Grava as transacoes no fim do arquivo; se falhar, nada delas fica no arquivo.
+     *
+     * @throws IOException erro de escrita ou campo maior que {@link #MAX_FIELD_BYTES}
+     */
+    void append(List<Transaction> transactions) throws IOException {
+        if (broken) {
+            throw new IOException("Journal com gravacao parcial nao desfeita");
+        }
+        buffer.clear();
+        for (Transaction transaction : transactions) {
+            encode(transaction);
+        }
+        buffer.flip();
+        long position = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            rollback(position, e);
+            throw e;
+        }
+    }
+
+    // Remove os bytes de uma gravacao que falhou no meio
+    private void rollback(long position, Exception cause) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException | RuntimeException e) {
+            broken = true;
+            cause.addSuppressed(e);
+        }
+    }
+
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void encode(Transaction transaction) throws IOException {
+        byte[] account = bytesOf(transaction.getAccount());
+        byte[] category = bytesOf(transaction.getCategory());
+        byte[] mcc = bytesOf(transaction.getMcc());
+        byte[] merchant = bytesOf(transaction.getMerchant());
+        byte[] idempotencyKey = bytesOf(transaction.getIdempotencyKey());
+        int length = Long.BYTES + Long.BYTES
+                + sizeOf(account) + sizeOf(category) + sizeOf(mcc) + sizeOf(merchant)
+                + sizeOf(idempotencyKey) + Long.BYTES + Byte.BYTES;
+        ensureCapacity(HEADER_SIZE + length + TRAILER_SIZE);
+
+        buffer.putInt(length);
+        int payloadStart = buffer.position();
+        buffer.putLong(transaction.getJournalSequence());
+        buffer.putLong(transaction.getAmount());
+        putString(account);
+        putString(category);
+        putString(mcc);
+        putString(merchant);
+        putString(idempotencyKey);
+        buffer.putLong(transaction.getCreatedAt() == null ? NO_TIMESTAMP : transaction.getCreatedAt().toEpochMilli());
+        buffer.put(transaction.getStatus().code());
+        crc.reset();
+        crc.update(buffer.array(), payloadStart, length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static Transaction decode(ByteBuffer payload) {
+        Transaction transaction = new Transaction();
+        transaction.setJournalSequence(payload.getLong());
+        transaction.setAmount(payload.getLong());
+        transaction.setAccount(getString(payload));
+        transaction.setCategory(getString(payload));
+        transaction.setMcc(getString(payload));
+        transaction.setMerchant(getString(payload));
+        if (payload.hasRemaining()) {
+            transaction.setIdempotencyKey(getString(payload));
+            long createdAt = payload.getLong();
+            transaction.setCreatedAt(createdAt == NO_TIMESTAMP ? null : Instant.ofEpochMilli(createdAt));
+        }
+        if (payload.hasRemaining()) {
+            transaction.setStatus(TransactionStatus.fromCode(payload.get()));
+        }
+        return transaction;
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] bytes) throws IOException {
+        if (bytes != null && bytes.length > MAX_FIELD_BYTES) {
+            throw new IOException("Campo com " + bytes.length + " bytes; o journal aceita ate " + MAX_FIELD_BYTES);
+        }
+        return Short.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private void putString(byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer payload) {
+        short length = payload.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (buffer.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
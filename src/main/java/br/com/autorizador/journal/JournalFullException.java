@@ -0,0 +1,12 @@
+package br.com.autorizador.journal;
+
+/**
+ * O journal nao aceitou o append dentro do tempo de espera: o buffer continuou cheio ou a
+ * gravacao no arquivo continuou ocupada por outros appends.
+ */
+public class JournalFullException extends RuntimeException {
+
+    public JournalFullException(int capacity) {
+        super("Journal de transacoes cheio (capacidade " + capacity + ")");
+    }
+}
@@ -0,0 +1,434 @@
+package br.com.autorizador.journal;
+
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Journal write-behind das transacoes aprovadas.
+ *
+ * - {@link #append(List)} numera as transacoes, grava no arquivo local (quando configurado)
+ *   e coloca em um buffer circular limitado; a aprovacao so e respondida depois disso.
+ *
+ * - Uma thread em background esvazia o buffer em lotes e, em um unico commit, insere as
+ *   transacoes e aplica os debitos em benefit_category. Assim o banco e sempre o resultado
+ *   do journal ate a maior journal_sequence gravada.
+ *
+ * - Com o buffer cheio, append espera ate autorizador.journal.offer-timeout-ms e entao
+ *   falha com {@link JournalFullException} (backpressure).
+ *
+ * - Na subida, {@link #recover()} reaplica no banco os registros do arquivo que ainda nao
+ *   tinham sido persistidos antes de um crash.
+ *
+ * - Falhas do banco sao repetidas ate o commit. Um lote que viola uma restricao e dividido
+ *   ate isolar o registro recusado; so ele sai do fluxo: o debito e aplicado, a linha vai
+ *   para o arquivo &lt;journal.path&gt;.rejected (e para o log) e o writer segue esvaziando o
+ *   buffer.
+ *
+ * - Metricas: autorizador.journal.persist (tempo do commit de cada lote, com os inserts),
+ *   autorizador.journal.batch-size, autorizador.journal.pending (transacoes no buffer) e
+ *   autorizador.journal.rejected (registros recusados pelo banco).
+ */
+@Component
+public class TransactionJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionJournal.class);
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${autorizador.journal.path:}")
+    private String path;
+
+    @Value("${autorizador.journal.fsync:true}")
+    private boolean fsync;
+
+    @Value("${autorizador.journal.capacity:8192}")
+    private int capacity;
+
+    @Value("${autorizador.journal.batch-size:500}")
+    private int batchSize;
+
+    @Value("${autorizador.journal.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    // ReentrantLock e nao synchronized: a gravacao no arquivo acontece segurando o lock, e um
+    // synchronized prenderia a carrier thread quando a requisicao roda em uma virtual thread
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private ArrayBlockingQueue<Transaction> buffer;
+    private Semaphore freeSlots;
+    private JournalFile file;
+    private JournalFile rejectedFile;
+    private Thread writer;
+    private Timer persistTimer;
+    private DistributionSummary batchSizeSummary;
+    private Counter rejectedCounter;
+
+    private volatile boolean running;
+    private long lastAppended;
+    private volatile long lastPersisted;
+
+    /**
+     * Reaplica os registros pendentes do arquivo e inicia a thread de escrita.
+     * Deve rodar antes de o ledger carregar os saldos do banco.
+     */
+    public synchronized void recover() {
+        if (running) {
+            return;
+        }
+        buffer = new ArrayBlockingQueue<>(capacity);
+        freeSlots = new Semaphore(capacity);
+        persistTimer = Timer.builder("autorizador.journal.persist").publishPercentileHistogram().register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("autorizador.journal.batch-size").register(meterRegistry);
+        rejectedCounter = Counter.builder("autorizador.journal.rejected").register(meterRegistry);
+        Gauge.builder("autorizador.journal.pending", buffer, ArrayBlockingQueue::size).register(meterRegistry);
+        lastPersisted = transactionRepository.findLastJournalSequence();
+        lastAppended = lastPersisted;
+
+        if (!path.isBlank()) {
+            try {
+                file = new JournalFile(Path.of(path), fsync);
+                rejectedFile = new JournalFile(Path.of(path + ".rejected"), fsync);
+                // Recusados antes do crash ja tiveram o debito aplicado
+                Set<Long> rejected = new HashSet<>();
+                for (Transaction transaction : rejectedFile.readAll()) {
+                    rejected.add(transaction.getJournalSequence());
+                }
+                List<Transaction> pending = new ArrayList<>();
+                for (Transaction transaction : file.readAll()) {
+                    if (transaction.getJournalSequence() > lastPersisted && !rejected.contains(transaction.getJournalSequence())) {
+                        pending.add(transaction);
+                    }
+                    lastAppended = Math.max(lastAppended, transaction.getJournalSequence());
+                }
+                for (int from = 0; from < pending.size(); from += batchSize) {
+                    persistWithRetry(new ArrayList<>(pending.subList(from, Math.min(from + batchSize, pending.size()))));
+                }
+                file.truncate();
+                log.info("Journal {} recuperado: {} transacoes reaplicadas", path, pending.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao recuperar o journal " + path, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Recuperacao do journal " + path + " interrompida", e);
+            }
+        }
+
+        running = true;
+        writer = new Thread(this::drain, "transaction-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void append(Transaction transaction) {
+        append(List.of(transaction), Long.MAX_VALUE);
+    }
+
+    public void append(Transaction transaction, long timeoutNanos) {
+        append(List.of(transaction), timeoutNanos);
+    }
+
+    public void append(List<Transaction> transactions) {
+        append(transactions, Long.MAX_VALUE);
+    }
+
+    /**
+     * Registra as transacoes aprovadas; retorna quando elas estao no arquivo local e no buffer.
+     *
+     * Espera por espaco no buffer e pela vez de gravar no maximo o menor entre timeoutNanos e
+     * autorizador.journal.offer-timeout-ms; depois disso falha com {@link JournalFullException}
+     * sem ter registrado nada. Um lote maior que a capacidade do buffer nunca caberia e e
+     * recusado na hora com IllegalArgumentException.
+     */
+    public void append(List<Transaction> transactions, long timeoutNanos) {
+        if (!running) {
+            throw new IllegalStateException("Journal de transacoes nao iniciado");
+        }
+        if (transactions.size() > capacity) {
+            throw new IllegalArgumentException("Lote de " + transactions.size()
+                    + " transacoes maior que a capacidade do journal (" + capacity + ")");
+        }
+        long waitNanos = Math.min(timeoutNanos, TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs));
+        long start = System.nanoTime();
+        boolean reserved = false;
+        boolean locked = false;
+        try {
+            reserved = freeSlots.tryAcquire(transactions.size(), waitNanos, TimeUnit.NANOSECONDS);
+            locked = reserved && appendLock.tryLock(waitNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locked) {
+            if (reserved) {
+                freeSlots.release(transactions.size());
+            }
+            throw new JournalFullException(capacity);
+        }
+
+        // Numeracao, arquivo e buffer sob o mesmo lock: a ordem da sequencia e a ordem de gravacao
+        try {
+            for (Transaction transaction : transactions) {
+                transaction.setJournalSequence(lastAppended + 1);
+                lastAppended++;
+            }
+            try {
+                if (file != null) {
+                    file.append(transactions);
+                }
+            } catch (IOException e) {
+                // O arquivo ja desfez a gravacao parcial: a sequencia pode ser reaproveitada
+                lastAppended -= transactions.size();
+                freeSlots.release(transactions.size());
+                throw new UncheckedIOException("Falha ao gravar no journal", e);
+            }
+            buffer.addAll(transactions);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long lastPersisted() {
+        return lastPersisted;
+    }
+
+    /**
+     * Espera ate que tudo o que foi registrado ate agora esteja no banco.
+     */
+    public boolean awaitPersisted(long timeoutMs) throws InterruptedException {
+        long target;
+        appendLock.lock();
+        try {
+            target = lastAppended;
+        } finally {
+            appendLock.unlock();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (lastPersisted < target) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (file != null) {
+            file.close();
+        }
+        if (rejectedFile != null) {
+            rejectedFile.close();
+        }
+    }
+
+    private void drain() {
+        List<Transaction> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Transaction first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                persistWithRetry(batch);
+                freeSlots.release(batch.size());
+                batch.clear();
+                truncateIfCaughtUp();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void persistWithRetry(List<Transaction> batch) throws InterruptedException {
+        long backoffMs = 10;
+        while (true) {
+            try {
+                persist(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (alreadyPersisted(batch)) {
+                    return;
+                }
+                batch.forEach(transaction -> transaction.setId(null));
+                if (e instanceof DataIntegrityViolationException) {
+                    try {
+                        if (dropDuplicateKeys(batch)) {
+                            continue;
+                        }
+                        // Sem chave repetida: algum registro e recusado pelo proprio conteudo e
+                        // falharia em toda tentativa, prendendo o buffer inteiro atras dele
+                        isolateRejected(batch);
+                        return;
+                    } catch (RuntimeException checkFailure) {
+                        log.debug("Banco indisponivel ao conferir as chaves do journal", checkFailure);
+                    }
+                }
+                // As transacoes ja foram aprovadas: nunca descartar, apenas tentar de novo
+                log.warn("Falha ao persistir {} transacoes do journal, nova tentativa em {}ms", batch.size(), backoffMs, e);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, 1000);
+            }
+        }
+    }
+
+    // O ledger so lembra as chaves por autorizador.idempotency.window-ms: um reenvio depois
+    // disso e aprovado de novo e a chave ja esta no banco (indice unico). O debito aconteceu e
+    // a transacao e gravada, so sem a chave repetida. Devolve se alguma chave foi removida.
+    private boolean dropDuplicateKeys(List<Transaction> batch) {
+        boolean dropped = false;
+        Set<List<String>> seen = new HashSet<>();
+        for (Transaction transaction : batch) {
+            String key = transaction.getIdempotencyKey();
+            if (key == null) {
+                continue;
+            }
+            if (!seen.add(List.of(transaction.getAccount(), key))
+                    || transactionRepository.existsByAccountAndIdempotencyKey(transaction.getAccount(), key)) {
+                log.warn("Chave de idempotencia {} da conta {} ja registrada; transacao {} gravada sem ela",
+                        key, transaction.getAccount(), transaction.getJournalSequence());
+                transaction.setIdempotencyKey(null);
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    // Metades gravadas em ordem; um registro sozinho que ainda viola uma restricao e recusado
+    private void isolateRejected(List<Transaction> batch) throws InterruptedException {
+        if (batch.size() == 1) {
+            reject(batch.get(0));
+            return;
+        }
+        int half = batch.size() / 2;
+        persistWithRetry(new ArrayList<>(batch.subList(0, half)));
+        persistWithRetry(new ArrayList<>(batch.subList(half, batch.size())));
+    }
+
+    private void reject(Transaction transaction) throws InterruptedException {
+        rejectedCounter.increment();
+        log.error("Transacao {} do journal recusada pelo banco; debito aplicado sem a linha: {}",
+                transaction.getJournalSequence(), transaction);
+        if (rejectedFile != null) {
+            try {
+                rejectedFile.append(List.of(transaction));
+            } catch (IOException e) {
+                log.error("Falha ao gravar a transacao recusada {} em {}.rejected", transaction.getJournalSequence(), path, e);
+            }
+        }
+
+        // A aprovacao ja foi respondida com 00: o saldo no banco acompanha o ledger
+        long backoffMs = 10;
+        while (true) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> benefitCategoryRepository.debitBalance(
+                        transaction.getAccount(), transaction.getCategory(), transaction.getAmount()));
+                break;
+            } catch (DataIntegrityViolationException e) {
+                log.error("Debito da transacao recusada {} tambem recusado pelo banco", transaction.getJournalSequence(), e);
+                break;
+            } catch (RuntimeException e) {
+                log.warn("Falha ao aplicar o debito da transacao recusada {}, nova tentativa em {}ms",
+                        transaction.getJournalSequence(), backoffMs, e);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, 1000);
+            }
+        }
+        lastPersisted = transaction.getJournalSequence();
+    }
+
+    private boolean alreadyPersisted(List<Transaction> batch) {
+        // O commit pode ter acontecido mesmo com erro na resposta do banco
+        try {
+            long last = batch.get(batch.size() - 1).getJournalSequence();
+            if (transactionRepository.findLastJournalSequence() >= last) {
+                lastPersisted = last;
+                return true;
+            }
+        } catch (RuntimeException e) {
+            log.debug("Banco indisponivel ao conferir o journal", e);
+        }
+        return false;
+    }
+
+    private void persist(List<Transaction> batch) {
+        // Um debito por carteira no lote, somando os valores
+        Map<List<String>, Long> debits = new LinkedHashMap<>();
+        for (Transaction transaction : batch) {
+            debits.merge(List.of(transaction.getAccount(), transaction.getCategory()), transaction.getAmount(), Long::sum);
+        }
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            transactionRepository.saveAll(batch);
+            debits.forEach((wallet, amount) -> benefitCategoryRepository.debitBalance(wallet.get(0), wallet.get(1), amount));
+        });
+        persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSizeSummary.record(batch.size());
+        lastPersisted = batch.get(batch.size() - 1).getJournalSequence();
+    }
+
+    private void truncateIfCaughtUp() {
+        if (file == null) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            if (lastAppended == lastPersisted) {
+                file.truncate();
+            }
+        } catch (IOException e) {
+            log.warn("Falha ao truncar o journal {}", path, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+}
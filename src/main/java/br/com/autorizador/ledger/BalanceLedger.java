@@ -0,0 +1,370 @@
+package br.com.autorizador.ledger;
+
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.Transaction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantem os saldos das carteiras (conta + categoria de beneficio) em memoria, em centavos.
+ *
+ * - As contas sao particionadas em N shards pelo hash da conta; cada shard e servida por
+ *   uma unica thread ({@link LedgerShard}), entao portadores diferentes autorizam em paralelo
+ *   e nenhuma autorizacao espera por um lock de linha no banco.
+ *
+ * - O banco nao e consultado no caminho da autorizacao: os debitos chegam a benefit_category
+ *   pelo journal de transacoes aprovadas, e o ledger so le o banco na carga inicial
+ *   ({@link LedgerBootstrap}).
+ *
+ * - autorizador.ledger.lock-wait mede o tempo de um debito na fila da shard (o equivalente
+ *   a espera pelo lock da linha) e autorizador.ledger.debit o tempo do debito em si.
+ *
+ * - O fallback para CASH ({@link #debitWithCashFallback}) confere e debita as duas carteiras
+ *   da conta em um unico passo da shard: nao ha segunda ida ao banco nem ordem de locks a
+ *   respeitar, entao nao ha como entrar em deadlock.
+ *
+ * - Idempotencia: debitos com chave consultam e registram a chave no {@link IdempotencyIndex}
+ *   da shard no mesmo passo do debito, entao dois envios simultaneos da mesma autorizacao
+ *   nunca debitam duas vezes. Cada chave e guardada como dois hashes de 64 bits
+ *   independentes ({@link #keyOf} e {@link #checkOf}) conferidos juntos: a chance de um envio
+ *   novo colidir com uma chave lembrada e receber 00 sem debito e menor que 10^-32 por envio.
+ *   A chave de um debito aprovado fica pendente ate {@link #confirm(String, String)}, chamado
+ *   depois do registro no journal; ate la um reenvio recebe
+ *   {@link DebitResult#DUPLICATE_PENDING} (07), nunca 00. As chaves ficam
+ *   autorizador.idempotency.window-ms (no maximo autorizador.idempotency.max-keys por
+ *   geracao) e sao recarregadas na subida a partir das transacoes registradas
+ *   ({@link #restoreIdempotencyKeys(List)}).
+ */
+@Component
+public class BalanceLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceLedger.class);
+
+    public enum DebitResult {
+        APPROVED,
+        APPROVED_CASH_FALLBACK,
+        INSUFFICIENT_FUNDS,
+        UNKNOWN_CATEGORY,
+        TIMED_OUT,
+        // Chave de idempotencia ja vista: resultado da primeira autorizacao, sem novo debito
+        DUPLICATE_APPROVED,
+        DUPLICATE_DECLINED,
+        // Chave de um debito ainda nao registrado no journal: o original pode ser estornado
+        DUPLICATE_PENDING
+    }
+
+    static final int DEFAULT_IDEMPOTENCY_KEYS = 200_000;
+    static final long DEFAULT_IDEMPOTENCY_WINDOW_MS = 600_000;
+
+    private final LedgerShard[] shards;
+
+    private final Timer lockWaitTimer;
+    private final Timer debitTimer;
+
+    private final Duration idempotencyWindow;
+
+    private volatile Map<String, Integer> categoryIndexes = Map.of();
+
+    public BalanceLedger() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BalanceLedger(int shards) {
+        this(shards, Metrics.globalRegistry);
+    }
+
+    public BalanceLedger(int shards, MeterRegistry meterRegistry) {
+        this(shards, DEFAULT_IDEMPOTENCY_WINDOW_MS, DEFAULT_IDEMPOTENCY_KEYS, meterRegistry);
+    }
+
+    @Autowired
+    public BalanceLedger(@Value("${autorizador.ledger.shards:0}") int shards,
+                         @Value("${autorizador.idempotency.window-ms:600000}") long idempotencyWindowMs,
+                         @Value("${autorizador.idempotency.max-keys:200000}") int idempotencyMaxKeys,
+                         MeterRegistry meterRegistry) {
+        idempotencyWindow = Duration.ofMillis(idempotencyWindowMs);
+        lockWaitTimer = Timer.builder("autorizador.ledger.lock-wait").publishPercentileHistogram().register(meterRegistry);
+        debitTimer = Timer.builder("autorizador.ledger.debit").publishPercentileHistogram().register(meterRegistry);
+        int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        this.shards = new LedgerShard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new LedgerShard(i, new IdempotencyIndex(idempotencyMaxKeys / count, idempotencyWindow.toNanos()));
+        }
+    }
+
+    public void load(List<BenefitCategory> benefitCategories) {
+        Map<String, Integer> newIndexes = new LinkedHashMap<>();
+        for (BenefitCategory benefitCategory : benefitCategories) {
+            newIndexes.putIfAbsent(benefitCategory.getCategory(), newIndexes.size());
+        }
+
+        List<Map<String, LedgerShard.Wallet>> newWallets = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            newWallets.add(new HashMap<>());
+        }
+        for (BenefitCategory benefitCategory : benefitCategories) {
+            LedgerShard.Wallet wallet = newWallets.get(shardOf(benefitCategory.getAccount()))
+                    .computeIfAbsent(benefitCategory.getAccount(), account -> new LedgerShard.Wallet(newIndexes.size()));
+            wallet.balances[newIndexes.get(benefitCategory.getCategory())] = benefitCategory.getBalance();
+        }
+
+        categoryIndexes = newIndexes;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].replaceWallets(newWallets.get(i));
+        }
+        log.info("Ledger carregado com {} saldos em {} shards", benefitCategories.size(), shards.length);
+    }
+
+    /**
+     * Cria so em memoria uma carteira com o mesmo saldo em todas as categorias carregadas,
+     * sem nada no banco (aquecimento); substitui uma carteira da conta, se houver. Retirada
+     * com {@link #removeWallet(String)}.
+     */
+    public void addWallet(String account, long balance) {
+        LedgerShard.Wallet wallet = new LedgerShard.Wallet(categoryIndexes.size());
+        Arrays.fill(wallet.balances, balance);
+        LedgerShard shard = shards[shardOf(account)];
+        shard.call(() -> shard.putWalletNow(account, wallet));
+    }
+
+    public void removeWallet(String account) {
+        LedgerShard shard = shards[shardOf(account)];
+        shard.call(() -> shard.removeWalletNow(account));
+    }
+
+    public DebitResult debit(String account, String category, long amount) {
+        return debit(account, category, amount, Long.MAX_VALUE);
+    }
+
+    /**
+     * Debita se a shard da conta conseguir atender em timeoutNanos; caso contrario devolve
+     * {@link DebitResult#TIMED_OUT} sem ter alterado o saldo.
+     */
+    public DebitResult debit(String account, String category, long amount, long timeoutNanos) {
+        return debit(account, category, amount, null, timeoutNanos, false);
+    }
+
+    /**
+     * Como {@link #debit(String, String, long, long)}, com a chave de idempotencia do envio
+     * (nula = sem chave). Uma chave ja vista na janela para a mesma conta devolve
+     * {@link DebitResult#DUPLICATE_APPROVED} ou {@link DebitResult#DUPLICATE_DECLINED} sem
+     * alterar saldos.
+     */
+    public DebitResult debit(String account, String category, long amount, String idempotencyKey, long timeoutNanos) {
+        return debit(account, category, amount, idempotencyKey, timeoutNanos, false);
+    }
+
+    /**
+     * Como {@link #debit(String, String, long, long)}, mas se a categoria nao tiver saldo
+     * suficiente debita o valor inteiro do saldo CASH da conta, no mesmo passo da shard.
+     * O resultado {@link DebitResult#APPROVED_CASH_FALLBACK} indica que o debito foi em CASH.
+     */
+    public DebitResult debitWithCashFallback(String account, String category, long amount, long timeoutNanos) {
+        return debit(account, category, amount, null, timeoutNanos, true);
+    }
+
+    public DebitResult debitWithCashFallback(String account, String category, long amount, String idempotencyKey, long timeoutNanos) {
+        return debit(account, category, amount, idempotencyKey, timeoutNanos, true);
+    }
+
+    private DebitResult debit(String account, String category, long amount, String idempotencyKey, long timeoutNanos, boolean cashFallback) {
+        Map<String, Integer> indexes = categoryIndexes;
+        Integer index = indexes.get(category);
+        if (account == null || index == null) {
+            return DebitResult.UNKNOWN_CATEGORY;
+        }
+        if (timeoutNanos <= 0) {
+            return DebitResult.TIMED_OUT;
+        }
+        Integer cashIndex = cashFallback ? indexes.get(BenefitCategory.CASH_CATEGORY) : null;
+        int fallbackIndex = cashIndex == null ? -1 : cashIndex;
+        long key = keyOf(account, idempotencyKey);
+        long check = checkOf(account, idempotencyKey);
+        LedgerShard shard = shards[shardOf(account)];
+        long submitted = System.nanoTime();
+        return shard.call(() -> {
+            long started = System.nanoTime();
+            lockWaitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+            DebitResult result = shard.debitNow(account, key, check, index, fallbackIndex, amount);
+            debitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return result;
+        }, timeoutNanos, DebitResult.TIMED_OUT);
+    }
+
+    /**
+     * Devolve um valor debitado, usado quando a transacao aprovada nao pode ser registrada.
+     */
+    public void credit(String account, String category, long amount) {
+        credit(account, category, amount, null);
+    }
+
+    /**
+     * Como {@link #credit(String, String, long)}, esquecendo tambem a chave de idempotencia do
+     * debito estornado: um novo envio dela e autorizado de novo.
+     */
+    public void credit(String account, String category, long amount, String idempotencyKey) {
+        Integer index = categoryIndexes.get(category);
+        if (account == null || index == null) {
+            return;
+        }
+        long key = keyOf(account, idempotencyKey);
+        long check = checkOf(account, idempotencyKey);
+        LedgerShard shard = shards[shardOf(account)];
+        shard.call(() -> shard.creditNow(account, key, check, index, amount));
+    }
+
+    /**
+     * Marca como aprovada a chave de um debito ja registrado no journal; reenvios passam a
+     * receber {@link DebitResult#DUPLICATE_APPROVED}. Nao espera: a confirmacao entra na fila
+     * da shard antes de qualquer reenvio que chegue depois da resposta.
+     */
+    public void confirm(String account, String idempotencyKey) {
+        long key = keyOf(account, idempotencyKey);
+        if (key == IdempotencyIndex.NO_KEY) {
+            return;
+        }
+        long check = checkOf(account, idempotencyKey);
+        LedgerShard shard = shards[shardOf(account)];
+        shard.execute(() -> shard.confirmNow(key, check));
+    }
+
+    /**
+     * Registra como aprovadas as chaves de transacoes ja gravadas (carga na subida).
+     */
+    public void restoreIdempotencyKeys(List<Transaction> transactions) {
+        List<List<Long>> keysByShard = new ArrayList<>(shards.length);
+        List<List<Long>> checksByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            keysByShard.add(new ArrayList<>());
+            checksByShard.add(new ArrayList<>());
+        }
+        int restored = 0;
+        for (Transaction transaction : transactions) {
+            long key = keyOf(transaction.getAccount(), transaction.getIdempotencyKey());
+            if (key != IdempotencyIndex.NO_KEY) {
+                int shard = shardOf(transaction.getAccount());
+                keysByShard.get(shard).add(key);
+                checksByShard.get(shard).add(checkOf(transaction.getAccount(), transaction.getIdempotencyKey()));
+                restored++;
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            long[] keys = keysByShard.get(i).stream().mapToLong(Long::longValue).toArray();
+            long[] checks = checksByShard.get(i).stream().mapToLong(Long::longValue).toArray();
+            LedgerShard shard = shards[i];
+            shard.call(() -> shard.rememberNow(keys, checks));
+        }
+        log.info("Indice de idempotencia carregado com {} chaves", restored);
+    }
+
+    public Duration idempotencyWindow() {
+        return idempotencyWindow;
+    }
+
+    public int idempotencyKeys() {
+        int keys = 0;
+        for (LedgerShard shard : shards) {
+            keys += shard.idempotencyKeys();
+        }
+        return keys;
+    }
+
+    /**
+     * Limpa, fora das threads das shards, as geracoes de chaves descartadas nas trocas.
+     */
+    @Scheduled(fixedDelayString = "${autorizador.idempotency.prune-interval-ms:1000}")
+    public void pruneIdempotencyKeys() {
+        for (LedgerShard shard : shards) {
+            shard.pruneIdempotency();
+        }
+    }
+
+    public long balanceOf(String account, String category) {
+        Integer index = categoryIndexes.get(category);
+        long balance = LedgerShard.ABSENT;
+        if (account != null && index != null) {
+            LedgerShard shard = shards[shardOf(account)];
+            balance = shard.call(() -> shard.balanceNow(account, index));
+        }
+        if (balance == LedgerShard.ABSENT) {
+            throw new IllegalArgumentException("Carteira desconhecida: " + account + "/" + category);
+        }
+        return balance;
+    }
+
+    /**
+     * Hash de 64 bits (FNV-1a seguido do finalizador do MurmurHash3) da conta com a chave;
+     * {@link IdempotencyIndex#NO_KEY} quando nao ha chave.
+     */
+    static long keyOf(String account, String idempotencyKey) {
+        if (account == null || idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return IdempotencyIndex.NO_KEY;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < account.length(); i++) {
+            hash = (hash ^ account.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        for (int i = 0; i < idempotencyKey.length(); i++) {
+            hash = (hash ^ idempotencyKey.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == IdempotencyIndex.NO_KEY ? 1 : hash;
+    }
+
+    /**
+     * Segundo hash de 64 bits da conta com a chave, independente de {@link #keyOf}
+     * (multiplicacao polinomial com outra constante seguida do finalizador do SplitMix64);
+     * conferido pelo {@link IdempotencyIndex} junto com o key, para que uma colisao de 64 bits
+     * nao faca um envio novo receber o resultado de outro.
+     */
+    static long checkOf(String account, String idempotencyKey) {
+        if (account == null || idempotencyKey == null) {
+            return 0;
+        }
+        long hash = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < account.length(); i++) {
+            hash = (hash + account.charAt(i)) * 0xbf58476d1ce4e5b9L;
+        }
+        hash = (hash + account.length()) * 0xbf58476d1ce4e5b9L;
+        for (int i = 0; i < idempotencyKey.length(); i++) {
+            hash = (hash + idempotencyKey.charAt(i)) * 0xbf58476d1ce4e5b9L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    public int shardOf(String account) {
+        int hash = account.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (LedgerShard shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
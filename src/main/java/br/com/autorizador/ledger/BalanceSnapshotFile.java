@@ -0,0 +1,110 @@
+package br.com.autorizador.ledger;
+
+import br.com.autorizador.model.BenefitCategory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Arquivo binario de um snapshot de saldos:
+ *
+ * [magic int][versao int][journal_sequence long][maior id de carteira long][criado em long]
+ * [n categorias short][categoria UTF]... [n carteiras int][conta UTF][indice da categoria short]
+ * [saldo long]... [CRC32 int]
+ *
+ * O arquivo e escrito em um temporario, sincronizado e so entao renomeado, entao um snapshot
+ * visivel esta sempre completo; o CRC detecta um arquivo corrompido depois disso.
+ */
+final class BalanceSnapshotFile {
+
+    private static final int MAGIC = 0x42534e50; // "BSNP"
+    private static final int VERSION = 1;
+
+    /**
+     * Saldos de todas as carteiras apos aplicar o journal ate journalSequence; carteiras com id
+     * maior que maxWalletId foram criadas depois do snapshot.
+     */
+    record Snapshot(long journalSequence, long maxWalletId, Instant createdAt, List<BenefitCategory> wallets) {
+    }
+
+    private BalanceSnapshotFile() {
+    }
+
+    static void write(Path path, Snapshot snapshot) throws IOException {
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        for (BenefitCategory wallet : snapshot.wallets()) {
+            categories.putIfAbsent(wallet.getCategory(), categories.size());
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            // O CRC fica acima do buffer: so conta o que ja foi escrito
+            BufferedOutputStream buffered = new BufferedOutputStream(file, 64 * 1024);
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.journalSequence());
+            out.writeLong(snapshot.maxWalletId());
+            out.writeLong(snapshot.createdAt().toEpochMilli());
+            out.writeShort(categories.size());
+            for (String category : categories.keySet()) {
+                out.writeUTF(category);
+            }
+            out.writeInt(snapshot.wallets().size());
+            for (BenefitCategory wallet : snapshot.wallets()) {
+                out.writeUTF(wallet.getAccount());
+                out.writeShort(categories.get(wallet.getCategory()));
+                out.writeLong(wallet.getBalance());
+            }
+            new DataOutputStream(buffered).writeInt((int) checked.getChecksum().getValue());
+            buffered.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Snapshot read(Path path) throws IOException {
+        try (BufferedInputStream buffered = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            CheckedInputStream checked = new CheckedInputStream(buffered, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Snapshot de saldos em formato desconhecido: " + path);
+            }
+            long journalSequence = in.readLong();
+            long maxWalletId = in.readLong();
+            Instant createdAt = Instant.ofEpochMilli(in.readLong());
+            String[] categories = new String[in.readShort()];
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            List<BenefitCategory> wallets = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String account = in.readUTF();
+                String category = categories[in.readShort()];
+                wallets.add(new BenefitCategory(account, category, in.readLong()));
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(buffered).readInt() != expected) {
+                throw new IOException("Snapshot de saldos corrompido: " + path);
+            }
+            return new Snapshot(journalSequence, maxWalletId, createdAt, wallets);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package br.com.autorizador.ledger;
+
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import br.com.autorizador.service.DebitStrategy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Snapshots periodicos dos saldos, cada um ligado a uma journal_sequence, em
+ * autorizador.snapshot.path (vazio desativa).
+ *
+ * - O journal grava as transacoes e os debitos em benefit_category no mesmo commit, entao os
+ *   saldos do banco sao sempre o journal aplicado ate MAX(journal_sequence). O snapshot le os
+ *   dois em uma unica transacao REPEATABLE_READ somente leitura, na thread do agendador: nao
+ *   trava o ledger nem as autorizacoes.
+ *
+ * - Na subida, {@link #restore()} carrega o snapshot mais recente e reaplica so a cauda do
+ *   journal (as transacoes depois da sequencia dele, somadas por carteira no banco); da
+ *   tabela so sao lidas as carteiras criadas depois do snapshot (id maior que o maxWalletId
+ *   dele). O custo da subida depende da cauda, nao do tamanho de benefit_category.
+ *
+ * - Com autorizador.snapshot.verify-on-restore o resultado ainda e conferido carteira a
+ *   carteira com a tabela inteira, lida em streaming; qualquer carteira divergente (saldo
+ *   alterado fora do journal) e registrada como no audit e a subida usa a tabela, que depois
+ *   do {@link br.com.autorizador.journal.TransactionJournal#recover()} ja inclui o journal.
+ *   Sem a conferencia, uma alteracao fora do journal so aparece no audit do proximo snapshot.
+ *
+ * - So ha snapshots com autorizador.authorization.debit-strategy=LEDGER: nas estrategias de
+ *   banco os debitos vao direto para benefit_category sem passar pelo journal, entao
+ *   journal_sequence nao anda e um snapshot nao teria como ser ligado aos saldos.
+ *
+ * - Cada snapshot novo audita o anterior: saldo anterior menos os debitos do journal entre os
+ *   dois tem que ser o saldo atual. Divergencias sao registradas no log e contadas em
+ *   autorizador.snapshot.mismatches, lendo so as transacoes do intervalo.
+ */
+@Component
+public class BalanceSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceSnapshots.class);
+
+    private static final String PREFIX = "balances-";
+    private static final String SUFFIX = ".snap";
+
+    // Carteiras divergentes listadas no log por auditoria
+    private static final int LOGGED_MISMATCHES = 10;
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${autorizador.snapshot.path:}")
+    private String path;
+
+    @Value("${autorizador.snapshot.retain:3}")
+    private int retain = 3;
+
+    @Value("${autorizador.snapshot.verify-on-restore:false}")
+    private boolean verifyOnRestore;
+
+    @Value("${autorizador.authorization.debit-strategy:LEDGER}")
+    private DebitStrategy debitStrategy = DebitStrategy.LEDGER;
+
+    private TransactionTemplate readTemplate;
+    private Counter mismatches;
+    private volatile long lastSnapshotMillis = -1;
+
+    @PostConstruct
+    void init() {
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        readTemplate.setReadOnly(true);
+        mismatches = Counter.builder("autorizador.snapshot.mismatches").register(meterRegistry);
+        TimeGauge.builder("autorizador.snapshot.age", this, TimeUnit.MILLISECONDS,
+                snapshots -> snapshots.lastSnapshotMillis < 0 ? Double.NaN : System.currentTimeMillis() - snapshots.lastSnapshotMillis)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return !path.isBlank() && debitStrategy == DebitStrategy.LEDGER;
+    }
+
+    /**
+     * Grava um snapshot se o journal andou desde o ultimo; devolve a sequencia do snapshot
+     * gravado, ou -1 se nada foi gravado.
+     */
+    @Scheduled(fixedDelayString = "${autorizador.snapshot.interval-ms:60000}",
+            initialDelayString = "${autorizador.snapshot.interval-ms:60000}")
+    public long snapshot() {
+        if (!isEnabled()) {
+            return -1;
+        }
+        try {
+            Path directory = Files.createDirectories(Path.of(path));
+            Optional<BalanceSnapshotFile.Snapshot> previous = latest(directory, Long.MAX_VALUE);
+            long start = System.nanoTime();
+            BalanceSnapshotFile.Snapshot snapshot = readTemplate.execute(status -> {
+                long sequence = transactionRepository.findLastJournalSequence();
+                if (previous.isPresent() && previous.get().journalSequence() == sequence) {
+                    return null;
+                }
+                long maxWalletId = benefitCategoryRepository.findMaxId();
+                List<BenefitCategory> wallets = new ArrayList<>();
+                try (Stream<Object[]> rows = benefitCategoryRepository.streamBalances()) {
+                    rows.forEach(row -> wallets.add(new BenefitCategory((String) row[0], (String) row[1], (Long) row[2])));
+                }
+                return new BalanceSnapshotFile.Snapshot(sequence, maxWalletId, Instant.now(), wallets);
+            });
+            if (snapshot == null) {
+                return -1;
+            }
+            BalanceSnapshotFile.write(directory.resolve(fileName(snapshot.journalSequence())), snapshot);
+            lastSnapshotMillis = snapshot.createdAt().toEpochMilli();
+            log.info("Snapshot de saldos na sequencia {}: {} carteiras em {}ms", snapshot.journalSequence(),
+                    snapshot.wallets().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            previous.ifPresent(before -> audit(before, snapshot));
+            prune(directory);
+            return snapshot.journalSequence();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar o snapshot de saldos em " + path, e);
+        }
+    }
+
+    /**
+     * Saldos atuais a partir do snapshot mais recente e da cauda do journal, ou vazio se nao ha
+     * snapshot utilizavel. Deve rodar depois de o journal ter sido recuperado.
+     */
+    public Optional<List<BenefitCategory>> restore() {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        Optional<BalanceSnapshotFile.Snapshot> latest = latest(Path.of(path), Long.MAX_VALUE);
+        if (latest.isEmpty()) {
+            return Optional.empty();
+        }
+        BalanceSnapshotFile.Snapshot snapshot = latest.get();
+        Optional<List<BenefitCategory>> restored = readTemplate.execute(status -> {
+            long sequence = transactionRepository.findLastJournalSequence();
+            if (snapshot.journalSequence() > sequence) {
+                log.warn("Snapshot de saldos na sequencia {} a frente do banco ({}); ignorado", snapshot.journalSequence(), sequence);
+                return Optional.empty();
+            }
+            List<BenefitCategory> wallets = applyTail(snapshot, sequence);
+            int created = 0;
+            try (Stream<Object[]> rows = benefitCategoryRepository.streamBalancesAfter(snapshot.maxWalletId())) {
+                for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                    wallets.add(new BenefitCategory((String) row[0], (String) row[1], (Long) row[2]));
+                    created++;
+                }
+            }
+            if (verifyOnRestore && !matchesTable(snapshot, wallets)) {
+                return Optional.empty();
+            }
+            log.info("Saldos restaurados do snapshot na sequencia {} e da cauda do journal ate {} ({} carteiras novas) em {}ms",
+                    snapshot.journalSequence(), sequence, created, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return Optional.of(wallets);
+        });
+        lastSnapshotMillis = snapshot.createdAt().toEpochMilli();
+        return restored;
+    }
+
+    /**
+     * Saldos das carteiras do snapshot apos aplicar o journal ate journalSequence, a partir do
+     * snapshot mais recente que nao passa dela; vazio se nao ha um.
+     */
+    public Optional<Map<List<String>, Long>> rebuild(long journalSequence) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        return latest(Path.of(path), journalSequence).map(snapshot -> {
+            Map<List<String>, Long> balances = new HashMap<>();
+            for (BenefitCategory wallet : applyTail(snapshot, journalSequence)) {
+                balances.put(List.of(wallet.getAccount(), wallet.getCategory()), wallet.getBalance());
+            }
+            return balances;
+        });
+    }
+
+    // Carteira a carteira contra a tabela inteira: erros que se compensam na soma tambem sao pegos
+    private boolean matchesTable(BalanceSnapshotFile.Snapshot snapshot, List<BenefitCategory> restored) {
+        Map<List<String>, Long> expected = new HashMap<>();
+        for (BenefitCategory wallet : restored) {
+            expected.put(List.of(wallet.getAccount(), wallet.getCategory()), wallet.getBalance());
+        }
+        int found = 0;
+        try (Stream<Object[]> rows = benefitCategoryRepository.streamBalances()) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                String account = (String) row[0];
+                String category = (String) row[1];
+                long balance = (Long) row[2];
+                Long restoredBalance = expected.remove(List.of(account, category));
+                if (restoredBalance == null || restoredBalance != balance) {
+                    if (found++ < LOGGED_MISMATCHES) {
+                        log.warn("Saldo de {}/{} no snapshot na sequencia {} mais o journal diverge de benefit_category: "
+                                + "esperado {}, encontrado {}", account, category, snapshot.journalSequence(),
+                                restoredBalance, balance);
+                    }
+                }
+            }
+        }
+        // Carteiras do snapshot que sumiram da tabela
+        found += expected.size();
+        if (found > 0) {
+            mismatches.increment(found);
+            log.warn("{} carteiras do snapshot na sequencia {} mais o journal divergem de benefit_category; "
+                    + "carregando da tabela", found, snapshot.journalSequence());
+            return false;
+        }
+        return true;
+    }
+
+    // Saldos do snapshot menos os debitos do journal em (sequencia do snapshot, upTo]
+    private List<BenefitCategory> applyTail(BalanceSnapshotFile.Snapshot snapshot, long upTo) {
+        Map<List<String>, Long> debits = new HashMap<>();
+        for (Object[] row : transactionRepository.sumDebitsByWallet(snapshot.journalSequence(), upTo)) {
+            debits.put(List.of((String) row[0], (String) row[1]), ((Number) row[2]).longValue());
+        }
+        List<BenefitCategory> wallets = new ArrayList<>(snapshot.wallets().size());
+        for (BenefitCategory wallet : snapshot.wallets()) {
+            long debited = debits.getOrDefault(List.of(wallet.getAccount(), wallet.getCategory()), 0L);
+            wallets.add(new BenefitCategory(wallet.getAccount(), wallet.getCategory(), wallet.getBalance() - debited));
+        }
+        return wallets;
+    }
+
+    private void audit(BalanceSnapshotFile.Snapshot before, BalanceSnapshotFile.Snapshot after) {
+        Map<List<String>, Long> expected = new HashMap<>();
+        for (BenefitCategory wallet : applyTail(before, after.journalSequence())) {
+            expected.put(List.of(wallet.getAccount(), wallet.getCategory()), wallet.getBalance());
+        }
+        int found = 0;
+        for (BenefitCategory wallet : after.wallets()) {
+            Long balance = expected.get(List.of(wallet.getAccount(), wallet.getCategory()));
+            // Carteira criada entre os dois snapshots: nao ha saldo anterior para conferir
+            if (balance != null && balance != wallet.getBalance()) {
+                if (found++ < LOGGED_MISMATCHES) {
+                    log.warn("Saldo de {}/{} diverge do journal entre as sequencias {} e {}: esperado {}, encontrado {}",
+                            wallet.getAccount(), wallet.getCategory(), before.journalSequence(), after.journalSequence(),
+                            balance, wallet.getBalance());
+                }
+            }
+        }
+        if (found > 0) {
+            mismatches.increment(found);
+        }
+    }
+
+    // Snapshot valido mais recente com sequencia ate maxSequence; arquivos ilegiveis sao ignorados
+    private Optional<BalanceSnapshotFile.Snapshot> latest(Path directory, long maxSequence) {
+        for (Path file : files(directory).reversed()) {
+            if (sequenceOf(file) > maxSequence) {
+                continue;
+            }
+            try {
+                return Optional.of(BalanceSnapshotFile.read(file));
+            } catch (IOException e) {
+                log.warn("Snapshot de saldos {} ilegivel; tentando o anterior", file, e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void prune(Path directory) throws IOException {
+        List<Path> files = files(directory);
+        for (int i = 0; i < files.size() - Math.max(retain, 1); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    // Em ordem crescente de sequencia (o nome tem a sequencia com zeros a esquerda)
+    private static List<Path> files(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao listar os snapshots de saldos em " + directory, e);
+        }
+    }
+
+    private static String fileName(long journalSequence) {
+        return String.format("%s%020d%s", PREFIX, journalSequence, SUFFIX);
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,195 @@
+package br.com.autorizador.ledger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Chaves de idempotencia recentes de uma shard e o resultado da primeira autorizacao de cada
+ * uma, para que o retry de uma autorizacao receba o mesmo codigo sem debitar de novo.
+ *
+ * - Cada chave (conta + chave) e guardada como dois hashes de 64 bits independentes, o do
+ *   enderecamento (key) e o de conferencia (check), em tabelas de enderecamento aberto de
+ *   long[] e byte[]: nenhum objeto por chave e nenhuma alocacao na consulta. Uma entrada so
+ *   casa se os dois hashes forem iguais; com 128 bits, a chance de um envio novo ser tomado
+ *   por outro ja visto (e receber o resultado dele sem debitar) e da ordem de
+ *   n / 2^128 por envio, com n chaves lembradas (menos de 10^-32 com 400 mil chaves).
+ *
+ * - Duas geracoes: a atual recebe as chaves novas e a anterior so e consultada. A cada
+ *   janela (ou quando a atual enche) a anterior e descartada e a atual passa a ser a
+ *   anterior, entao uma chave e lembrada por pelo menos uma janela e no maximo duas, e a
+ *   memoria fica limitada a quatro tabelas de tamanho fixo: a atual, a anterior, a
+ *   descartada ainda em limpeza e a limpa a espera da proxima troca.
+ *
+ * - Um debito aprovado fica {@link #PENDING} ate o registro no journal terminar e so entao
+ *   passa a {@link #APPROVED} ({@link #confirm(long, long)}); se o registro falhar, a chave e
+ *   liberada. Um reenvio que chega enquanto a chave esta pendente nao pode responder 00:
+ *   o original ainda pode ser estornado.
+ *
+ * - A troca de geracao e so uma troca de referencias na thread da shard. A limpeza da tabela
+ *   descartada ({@link #prune()}) roda fora dela e devolve a tabela limpa como a proxima
+ *   geracao; se ela ainda nao estiver pronta na troca, uma tabela nova e alocada.
+ *
+ * Todos os metodos, exceto {@link #prune()}, devem ser chamados na thread da shard.
+ */
+final class IdempotencyIndex {
+
+    static final long NO_KEY = 0;
+
+    static final byte ABSENT = 0;
+    static final byte APPROVED = 1;
+    static final byte DECLINED = 2;
+    // Debitado, aguardando o registro no journal
+    static final byte PENDING = 3;
+    // Debito estornado (transacao nao registrada): a chave volta a ser tratada como nova
+    private static final byte RELEASED = 4;
+
+    private static final class Generation {
+        final long[] keys;
+        final long[] checks;
+        final byte[] results;
+        int size;
+        long startedNanos;
+
+        Generation(int slots) {
+            keys = new long[slots];
+            checks = new long[slots];
+            results = new byte[slots];
+        }
+    }
+
+    private final int capacity;
+    private final int slots;
+    private final long windowNanos;
+
+    private final AtomicReference<Generation> retired = new AtomicReference<>();
+    private final AtomicReference<Generation> spare = new AtomicReference<>();
+
+    private Generation current;
+    private Generation previous;
+
+    IdempotencyIndex(int capacity, long windowNanos) {
+        this(capacity, windowNanos, System.nanoTime());
+    }
+
+    IdempotencyIndex(int capacity, long windowNanos, long nowNanos) {
+        this.capacity = Math.max(capacity, 1);
+        // Fator de carga de no maximo 0,5 para sondagens curtas
+        this.slots = Integer.highestOneBit(this.capacity * 2 - 1) << 1;
+        this.windowNanos = windowNanos;
+        current = new Generation(slots);
+        current.startedNanos = nowNanos;
+        previous = new Generation(slots);
+        previous.startedNanos = nowNanos;
+    }
+
+    /**
+     * Resultado registrado para a chave ({@link #APPROVED}, {@link #DECLINED} ou
+     * {@link #PENDING}), ou {@link #ABSENT} se ela nao foi vista na janela.
+     */
+    byte get(long key, long check, long nowNanos) {
+        rotateIfDue(nowNanos);
+        byte result = find(current, key, check);
+        if (result == ABSENT) {
+            result = find(previous, key, check);
+        }
+        return result == RELEASED ? ABSENT : result;
+    }
+
+    void put(long key, long check, byte result, long nowNanos) {
+        rotateIfDue(nowNanos);
+        if (current.size >= capacity) {
+            rotate(nowNanos);
+        }
+        int slot = slotOf(current, key, check);
+        if (current.keys[slot] == NO_KEY) {
+            current.keys[slot] = key;
+            current.checks[slot] = check;
+            current.size++;
+        }
+        current.results[slot] = result;
+    }
+
+    /**
+     * Promove a chave de {@link #PENDING} a {@link #APPROVED}: o debito foi registrado.
+     */
+    void confirm(long key, long check) {
+        confirm(current, key, check);
+        confirm(previous, key, check);
+    }
+
+    /**
+     * Esquece o resultado da chave; o proximo envio dela e autorizado como novo.
+     */
+    void release(long key, long check) {
+        release(current, key, check);
+        release(previous, key, check);
+    }
+
+    /**
+     * Limpa a geracao descartada na ultima troca e a deixa pronta para a proxima; pode ser
+     * chamado de qualquer thread.
+     */
+    void prune() {
+        Generation generation = retired.getAndSet(null);
+        if (generation == null) {
+            return;
+        }
+        Arrays.fill(generation.keys, NO_KEY);
+        Arrays.fill(generation.checks, 0);
+        Arrays.fill(generation.results, ABSENT);
+        generation.size = 0;
+        spare.compareAndSet(null, generation);
+    }
+
+    int size() {
+        return current.size + previous.size;
+    }
+
+    private void rotateIfDue(long nowNanos) {
+        if (nowNanos - current.startedNanos >= windowNanos) {
+            rotate(nowNanos);
+        }
+    }
+
+    private void rotate(long nowNanos) {
+        Generation next = spare.getAndSet(null);
+        if (next == null) {
+            next = new Generation(slots);
+        }
+        next.startedNanos = nowNanos;
+        retired.set(previous);
+        previous = current;
+        current = next;
+    }
+
+    private byte find(Generation generation, long key, long check) {
+        int slot = slotOf(generation, key, check);
+        return generation.keys[slot] == key ? generation.results[slot] : ABSENT;
+    }
+
+    private void confirm(Generation generation, long key, long check) {
+        int slot = slotOf(generation, key, check);
+        if (generation.keys[slot] == key && generation.results[slot] == PENDING) {
+            generation.results[slot] = APPROVED;
+        }
+    }
+
+    private void release(Generation generation, long key, long check) {
+        int slot = slotOf(generation, key, check);
+        if (generation.keys[slot] == key) {
+            generation.results[slot] = RELEASED;
+        }
+    }
+
+    // Sondagem linear: devolve o slot da chave ou o primeiro slot vazio do caminho dela; um
+    // slot com o mesmo key e outro check e de outra chave (colisao) e a sondagem continua
+    private int slotOf(Generation generation, long key, long check) {
+        int mask = slots - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (generation.keys[slot] != NO_KEY
+                && (generation.keys[slot] != key || generation.checks[slot] != check)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
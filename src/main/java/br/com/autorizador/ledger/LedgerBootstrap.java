@@ -0,0 +1,43 @@
+package br.com.autorizador.ledger;
+
+import br.com.autorizador.journal.TransactionJournal;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Ordem de subida do ledger: primeiro o journal reaplica no banco as transacoes aprovadas
+ * que nao chegaram a ser persistidas, depois o ledger carrega os saldos ja corrigidos (do
+ * snapshot mais recente mais a cauda do journal, quando ha um utilizavel, ou da tabela) e as
+ * chaves de idempotencia das transacoes aprovadas dentro da janela.
+ */
+@Component
+public class LedgerBootstrap implements SmartInitializingSingleton {
+
+    @Autowired
+    private TransactionJournal transactionJournal;
+
+    @Autowired
+    private BalanceLedger balanceLedger;
+
+    @Autowired
+    private BalanceSnapshots balanceSnapshots;
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        transactionJournal.recover();
+        balanceLedger.load(balanceSnapshots.restore().orElseGet(benefitCategoryRepository::findAll));
+        Instant since = Instant.now().minus(balanceLedger.idempotencyWindow());
+        balanceLedger.restoreIdempotencyKeys(transactionRepository.findWithIdempotencyKeySince(since));
+    }
+}
@@ -0,0 +1,232 @@
+package br.com.autorizador.ledger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Particao do ledger servida por uma unica thread.
+ *
+ * Todo acesso a {@link #wallets} acontece dentro do executor da propria shard, entao
+ * os saldos nao precisam de lock nem de CAS: a fila do executor e o ponto de serializacao,
+ * e somente as contas que caem na mesma shard disputam a mesma thread.
+ */
+class LedgerShard {
+
+    static final long ABSENT = Long.MIN_VALUE;
+
+    /**
+     * Saldos de uma conta, indexados pelo indice da categoria no ledger.
+     */
+    static final class Wallet {
+        final long[] balances;
+
+        Wallet(int categories) {
+            balances = new long[categories];
+            Arrays.fill(balances, ABSENT);
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final IdempotencyIndex idempotency;
+
+    private Map<String, Wallet> wallets = new HashMap<>();
+
+    LedgerShard(int index) {
+        this(index, new IdempotencyIndex(BalanceLedger.DEFAULT_IDEMPOTENCY_KEYS, TimeUnit.MILLISECONDS.toNanos(BalanceLedger.DEFAULT_IDEMPOTENCY_WINDOW_MS)));
+    }
+
+    LedgerShard(int index, IdempotencyIndex idempotency) {
+        this.idempotency = idempotency;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-shard-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Enfileira a tarefa sem esperar; ela roda depois de tudo que ja estava na fila da shard.
+     */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    <T> T call(Callable<T> task) {
+        return await(executor.submit(task));
+    }
+
+    /**
+     * Como {@link #call(Callable)}, mas desiste se a tarefa nao comecar a rodar em timeoutNanos
+     * e devolve timedOut. Uma tarefa que ja comecou sempre termina e o resultado e devolvido,
+     * entao um debito nunca fica aplicado sem que o chamador saiba.
+     */
+    <T> T call(Callable<T> task, long timeoutNanos, T timedOut) {
+        Future<T> future = executor.submit(task);
+        try {
+            return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return future.cancel(false) ? timedOut : awaitUninterruptibly(future);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Falha na shard do ledger", e.getCause());
+        }
+    }
+
+    private static <T> T awaitUninterruptibly(Future<T> future) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Falha na shard do ledger", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando a shard do ledger", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Falha na shard do ledger", e.getCause());
+        }
+    }
+
+    void replaceWallets(Map<String, Wallet> newWallets) {
+        call(() -> wallets = newWallets);
+    }
+
+    Void putWalletNow(String account, Wallet wallet) {
+        wallets.put(account, wallet);
+        return null;
+    }
+
+    Void removeWalletNow(String account) {
+        wallets.remove(account);
+        return null;
+    }
+
+    BalanceLedger.DebitResult debitNow(String account, int categoryIndex, long amount) {
+        Wallet wallet = wallets.get(account);
+        if (wallet == null || wallet.balances[categoryIndex] == ABSENT) {
+            return BalanceLedger.DebitResult.UNKNOWN_CATEGORY;
+        }
+        if (wallet.balances[categoryIndex] < amount) {
+            return BalanceLedger.DebitResult.INSUFFICIENT_FUNDS;
+        }
+        wallet.balances[categoryIndex] -= amount;
+        return BalanceLedger.DebitResult.APPROVED;
+    }
+
+    /**
+     * Debita da categoria e, se ela nao tiver saldo suficiente, da carteira fallbackIndex
+     * (-1 = sem fallback). As duas leituras e o debito acontecem no mesmo passo da shard.
+     */
+    BalanceLedger.DebitResult debitNow(String account, int categoryIndex, int fallbackIndex, long amount) {
+        BalanceLedger.DebitResult result = debitNow(account, categoryIndex, amount);
+        if (result != BalanceLedger.DebitResult.INSUFFICIENT_FUNDS || fallbackIndex < 0 || fallbackIndex == categoryIndex) {
+            return result;
+        }
+        return debitNow(account, fallbackIndex, amount) == BalanceLedger.DebitResult.APPROVED
+                ? BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK
+                : BalanceLedger.DebitResult.INSUFFICIENT_FUNDS;
+    }
+
+    /**
+     * Como {@link #debitNow(String, int, int, long)}, mas uma chave de idempotencia (key e
+     * check, os dois hashes de {@link BalanceLedger}) ja vista na janela devolve o resultado
+     * da primeira autorizacao (DUPLICATE_*) sem debitar. Aprovacoes ficam pendentes ate
+     * {@link #confirmNow(long, long)} e, enquanto isso, um reenvio recebe DUPLICATE_PENDING;
+     * recusas por saldo ficam registradas. key = {@link IdempotencyIndex#NO_KEY} desliga a
+     * verificacao.
+     */
+    BalanceLedger.DebitResult debitNow(String account, long key, long check, int categoryIndex, int fallbackIndex, long amount) {
+        if (key == IdempotencyIndex.NO_KEY) {
+            return debitNow(account, categoryIndex, fallbackIndex, amount);
+        }
+        long now = System.nanoTime();
+        byte previous = idempotency.get(key, check, now);
+        if (previous == IdempotencyIndex.APPROVED) {
+            return BalanceLedger.DebitResult.DUPLICATE_APPROVED;
+        }
+        if (previous == IdempotencyIndex.DECLINED) {
+            return BalanceLedger.DebitResult.DUPLICATE_DECLINED;
+        }
+        if (previous == IdempotencyIndex.PENDING) {
+            return BalanceLedger.DebitResult.DUPLICATE_PENDING;
+        }
+        BalanceLedger.DebitResult result = debitNow(account, categoryIndex, fallbackIndex, amount);
+        if (result == BalanceLedger.DebitResult.APPROVED || result == BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK) {
+            idempotency.put(key, check, IdempotencyIndex.PENDING, now);
+        } else if (result == BalanceLedger.DebitResult.INSUFFICIENT_FUNDS) {
+            idempotency.put(key, check, IdempotencyIndex.DECLINED, now);
+        }
+        return result;
+    }
+
+    Void creditNow(String account, long key, long check, int categoryIndex, long amount) {
+        if (key != IdempotencyIndex.NO_KEY) {
+            idempotency.release(key, check);
+        }
+        return creditNow(account, categoryIndex, amount);
+    }
+
+    void confirmNow(long key, long check) {
+        idempotency.confirm(key, check);
+    }
+
+    Void rememberNow(long[] keys, long[] checks) {
+        long now = System.nanoTime();
+        for (int i = 0; i < keys.length; i++) {
+            idempotency.put(keys[i], checks[i], IdempotencyIndex.APPROVED, now);
+        }
+        return null;
+    }
+
+    void pruneIdempotency() {
+        idempotency.prune();
+    }
+
+    int idempotencyKeys() {
+        return call(idempotency::size);
+    }
+
+    Void creditNow(String account, int categoryIndex, long amount) {
+        Wallet wallet = wallets.get(account);
+        if (wallet != null && wallet.balances[categoryIndex] != ABSENT) {
+            wallet.balances[categoryIndex] += amount;
+        }
+        return null;
+    }
+
+    long balanceNow(String account, int categoryIndex) {
+        Wallet wallet = wallets.get(account);
+        return wallet == null ? ABSENT : wallet.balances[categoryIndex];
+    }
+
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
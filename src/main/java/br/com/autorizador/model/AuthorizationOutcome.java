@@ -0,0 +1,36 @@
+package br.com.autorizador.model;
+
+/**
+ * Motivo de uma resposta de autorizacao. Varios motivos respondem o mesmo codigo (todos os
+ * 07), mas sao contados separadamente nas metricas.
+ */
+public enum AuthorizationOutcome {
+
+    APPROVED(AuthorizationResult.APPROVED),
+    APPROVED_CASH_FALLBACK(AuthorizationResult.APPROVED),
+    INSUFFICIENT_FUNDS(AuthorizationResult.INSUFFICIENT_FUNDS),
+    // Reenvio de uma chave de idempotencia ja autorizada: mesmo codigo, sem novo debito
+    DUPLICATE_APPROVED(AuthorizationResult.APPROVED),
+    DUPLICATE_DECLINED(AuthorizationResult.INSUFFICIENT_FUNDS),
+    // Reenvio enquanto o original ainda esta sendo registrado: ele pode ser estornado
+    DUPLICATE_PENDING(AuthorizationResult.PROCESSING_ERROR),
+    // Valor zero ou negativo (ex.: totalAmount ausente): recusado sem debito
+    INVALID_AMOUNT(AuthorizationResult.PROCESSING_ERROR),
+    // Conta, comerciante, MCC ou chave maior que a coluna: o banco nunca aceitaria a transacao
+    INVALID_FIELD(AuthorizationResult.PROCESSING_ERROR),
+    UNKNOWN_CATEGORY(AuthorizationResult.PROCESSING_ERROR),
+    TIMEOUT(AuthorizationResult.PROCESSING_ERROR),
+    JOURNAL_FULL(AuthorizationResult.PROCESSING_ERROR),
+    OVERLOAD(AuthorizationResult.PROCESSING_ERROR),
+    EXCEPTION(AuthorizationResult.PROCESSING_ERROR);
+
+    private final AuthorizationResult result;
+
+    AuthorizationOutcome(AuthorizationResult result) {
+        this.result = result;
+    }
+
+    public AuthorizationResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package br.com.autorizador.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Resultado de uma autorizacao com o corpo JSON da resposta ja codificado em bytes.
+ *
+ * Os bytes sao montados uma unica vez por constante; respostas de sucesso, de saldo
+ * insuficiente e de erro (inclusive as do handler de excecoes) saem identicas byte a byte.
+ */
+public enum AuthorizationResult {
+
+    APPROVED("00"),
+    INSUFFICIENT_FUNDS("51"),
+    PROCESSING_ERROR("07");
+
+    private final String code;
+    private final byte[] body;
+
+    AuthorizationResult(String code) {
+        this.code = code;
+        this.body = ("{\"code\": \"" + code + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int bodyLength() {
+        return body.length;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(body);
+    }
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -18,12 +19,24 @@ public class BenefitCategory {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
+    private String account;
     private String mcc;
-    private double balance;
+    // Saldo em centavos
+    private long balance;
     private String category;
 
-    public BenefitCategory(String category, double balance) {
+    // Incrementada a cada debito, inclusive pelos UPDATEs condicionais: quem ler e salvar a
+    // entidade enquanto um debito acontece recebe OptimisticLockException em vez de sobrescrever
+    @Version
+    private long version;
+
+    public BenefitCategory(String category, long balance) {
         this.category = category;
         this.balance = balance;
     }
+
+    public BenefitCategory(String account, String category, long balance) {
+        this(category, balance);
+        this.account = account;
+    }
 }
\ No newline at end of file
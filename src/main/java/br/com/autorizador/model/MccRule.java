@@ -0,0 +1,32 @@
+package br.com.autorizador.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Regra de classificacao: os MCCs de mccStart ate mccEnd (inclusive) pertencem a categoria.
+ * Quando regras se sobrepoem, vence a de maior prioridade e, empatando, a de menor intervalo.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+public class MccRule {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private int mccStart;
+    private int mccEnd;
+    private String category;
+    private int priority;
+
+    public MccRule(int mccStart, int mccEnd, String category) {
+        this.mccStart = mccStart;
+        this.mccEnd = mccEnd;
+        this.category = category;
+    }
+}
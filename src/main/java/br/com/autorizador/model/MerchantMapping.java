@@ -4,14 +4,52 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import lombok.Data;
 
 @Data
 @Entity
 public class MerchantMapping {
+
+    // Tamanho das colunas merchant e merchant_normalized (VARCHAR(255))
+    public static final int MAX_MERCHANT_LENGTH = 255;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String merchant;
+    private String merchantNormalized;
     private String correctedMcc;
-}
\ No newline at end of file
+
+    @PrePersist
+    @PreUpdate
+    void normalizeMerchant() {
+        merchantNormalized = normalize(merchant);
+    }
+
+    /**
+     * Normaliza o nome do comerciante para busca: sem espacos nas pontas, espacos repetidos
+     * colapsados e letras maiusculas ("Uber Eats   SAO PAULO " -> "UBER EATS SAO PAULO").
+     */
+    public static String normalize(String merchant) {
+        if (merchant == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(merchant.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < merchant.length(); i++) {
+            char c = merchant.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(Character.toUpperCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package br.com.autorizador.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Valores monetarios em centavos (long), sem double e sem BigDecimal.
+ *
+ * No JSON o valor continua decimal ("totalAmount": 100.00); {@link CentsDeserializer} le os
+ * caracteres do numero direto do buffer do parser e {@link CentsSerializer} escreve de volta
+ * com duas casas.
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Converte "123", "123.4" ou "123.45" em centavos. O valor de uma transacao e sempre
+     * positivo: zero, valores negativos, mais de duas casas decimais (exceto zeros), notacao
+     * cientifica ou qualquer outro caractere sao rejeitados.
+     */
+    public static long parseCents(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        if (i < end && chars[i] == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Valor monetario vazio");
+        }
+
+        long units = 0;
+        int integerDigits = 0;
+        for (; i < end && chars[i] != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(chars, i, offset, length));
+            integerDigits++;
+        }
+
+        long cents = 0;
+        int fractionDigits = 0;
+        if (i < end) {
+            i++; // '.'
+            for (; i < end; i++) {
+                int digit = digit(chars, i, offset, length);
+                if (fractionDigits < 2) {
+                    cents = cents * 10 + digit;
+                } else if (digit != 0) {
+                    throw new NumberFormatException("Mais de duas casas decimais: " + new String(chars, offset, length));
+                }
+                fractionDigits++;
+            }
+            if (fractionDigits == 0 && integerDigits == 0) {
+                throw new NumberFormatException("Valor monetario invalido: " + new String(chars, offset, length));
+            }
+        }
+        if (fractionDigits == 1) {
+            cents *= 10;
+        }
+
+        long total = Math.addExact(Math.multiplyExact(units, 100), cents);
+        if (total == 0) {
+            throw new NumberFormatException("Valor monetario deve ser positivo: " + new String(chars, offset, length));
+        }
+        return total;
+    }
+
+    public static long parseCents(String value) {
+        return parseCents(value.toCharArray(), 0, value.length());
+    }
+
+    /**
+     * Formata centavos com duas casas decimais: 10050 -> "100.50".
+     */
+    public static String format(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return (cents < 0 ? "-" : "") + (abs / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    private static int digit(char[] chars, int index, int offset, int length) {
+        int digit = chars[index] - '0';
+        if (digit < 0 || digit > 9) {
+            throw new NumberFormatException("Valor monetario invalido: " + new String(chars, offset, length));
+        }
+        return digit;
+    }
+
+    public static class CentsDeserializer extends JsonDeserializer<Long> {
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_STRING) {
+                return (Long) context.handleUnexpectedToken(Long.class, parser);
+            }
+            try {
+                return parseCents(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            } catch (NumberFormatException | ArithmeticException e) {
+                return (Long) context.handleWeirdStringValue(Long.class, parser.getText(), e.getMessage());
+            }
+        }
+    }
+
+    public static class CentsSerializer extends JsonSerializer<Long> {
+
+        @Override
+        public void serialize(Long cents, JsonGenerator generator, SerializerProvider serializers) throws IOException {
+            generator.writeNumber(format(cents));
+        }
+    }
+}
@@ -1,22 +1,57 @@
 package br.com.autorizador.model;
 
 import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Data
 @Entity
 public class Transaction {
 
+    // Tamanho das colunas de texto (VARCHAR(255)); acima disso o banco recusa a linha
+    public static final int MAX_TEXT_LENGTH = 255;
+
+    // Sequence com alocacao em blocos: IDENTITY impede o Hibernate de agrupar inserts em batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+    @SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_seq", allocationSize = 50)
     private Long id;
+    private String account;
     private String mcc;
 
+    // Valor em centavos; no JSON continua decimal ("totalAmount": 100.00)
     @JsonAlias("totalAmount")
-    private double amount;
+    @JsonDeserialize(using = Money.CentsDeserializer.class)
+    @JsonSerialize(using = Money.CentsSerializer.class)
+    private long amount;
     private String merchant;
-}
\ No newline at end of file
+    private String category;
+
+    // Chave enviada pelo gateway; reenvios com a mesma chave (por conta) recebem o codigo da
+    // primeira autorizacao sem novo debito
+    private String idempotencyKey;
+
+    // Momento da aprovacao, usado para recarregar as chaves de idempotencia recentes na subida
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant createdAt;
+
+    @Enumerated(EnumType.STRING)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private TransactionStatus status = TransactionStatus.APPROVED;
+
+    // Posicao no journal de transacoes aprovadas; a maior gravada marca o que ja foi persistido
+    @JsonIgnore
+    private Long journalSequence;
+}
@@ -0,0 +1,9 @@
+package br.com.autorizador.model;
+
+import java.util.List;
+
+/**
+ * Uma pagina do historico de transacoes; nextCursor e nulo na ultima pagina.
+ */
+public record TransactionPage(List<Transaction> transactions, String nextCursor) {
+}
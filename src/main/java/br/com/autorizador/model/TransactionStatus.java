@@ -0,0 +1,33 @@
+package br.com.autorizador.model;
+
+/**
+ * Situacao de uma transacao registrada. So as aprovacoes sao gravadas; recusas e erros ficam
+ * apenas nas metricas de resposta.
+ *
+ * O {@link #code()} e o que vai para o arquivo do journal: fixo por situacao, nao depende da
+ * ordem das constantes (codigos gravados nunca mudam de significado nem sao reaproveitados).
+ */
+public enum TransactionStatus {
+    APPROVED(0),
+    // Aprovada com o saldo CASH porque a categoria do MCC nao cobria o valor
+    APPROVED_CASH_FALLBACK(1);
+
+    private final byte code;
+
+    TransactionStatus(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public static TransactionStatus fromCode(byte code) {
+        for (TransactionStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Codigo de situacao desconhecido: " + code);
+    }
+}
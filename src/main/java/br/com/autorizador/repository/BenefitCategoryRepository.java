@@ -2,16 +2,59 @@ package br.com.autorizador.repository;
 
 import br.com.autorizador.model.BenefitCategory;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BenefitCategoryRepository extends JpaRepository<BenefitCategory, Long> {
 
         @Lock(LockModeType.PESSIMISTIC_WRITE)
-        @Query("SELECT bc FROM BenefitCategory bc WHERE bc.category = :category")
-        Optional<BenefitCategory> findByCategoryWithLock(@Param("category") String category);
-}
\ No newline at end of file
+        @Query("SELECT bc FROM BenefitCategory bc WHERE bc.account = :account AND bc.category = :category")
+        Optional<BenefitCategory> findByCategoryWithLock(@Param("account") String account, @Param("category") String category);
+
+        /**
+         * Debito condicional em um unico comando, sem leitura antes: devolve 1 se a carteira
+         * existia e tinha saldo suficiente, 0 caso contrario.
+         */
+        @Modifying
+        @Transactional
+        @Query("UPDATE BenefitCategory bc SET bc.balance = bc.balance - :amount, bc.version = bc.version + 1 "
+                + "WHERE bc.account = :account AND bc.category = :category AND bc.balance >= :amount")
+        int debitIfSufficient(@Param("account") String account, @Param("category") String category, @Param("amount") long amount);
+
+        boolean existsByAccountAndCategory(String account, String category);
+
+        @Modifying
+        @Transactional
+        @Query("UPDATE BenefitCategory bc SET bc.balance = bc.balance - :amount, bc.version = bc.version + 1 WHERE bc.account = :account AND bc.category = :category")
+        int debitBalance(@Param("account") String account, @Param("category") String category, @Param("amount") long amount);
+
+        /**
+         * Conta, categoria e saldo de todas as carteiras, sem montar entidades, lidos aos poucos
+         * (para o snapshot de saldos e a conferencia dele na subida).
+         */
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+        @Query("SELECT bc.account, bc.category, bc.balance FROM BenefitCategory bc")
+        Stream<Object[]> streamBalances();
+
+        /**
+         * Como {@link #streamBalances()}, so das carteiras com id maior que o informado (as
+         * criadas depois de um snapshot), pela chave primaria.
+         */
+        @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+        @Query("SELECT bc.account, bc.category, bc.balance FROM BenefitCategory bc WHERE bc.id > :id")
+        Stream<Object[]> streamBalancesAfter(@Param("id") long id);
+
+        @Query("SELECT COALESCE(MAX(bc.id), 0) FROM BenefitCategory bc")
+        long findMaxId();
+}
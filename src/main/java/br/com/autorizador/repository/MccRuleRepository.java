@@ -0,0 +1,7 @@
+package br.com.autorizador.repository;
+
+import br.com.autorizador.model.MccRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MccRuleRepository extends JpaRepository<MccRule, Long> {
+}
@@ -0,0 +1,32 @@
+package br.com.autorizador.repository;
+
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.model.TransactionStatus;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Consulta do historico de transacoes com paginacao por chave (created_at, id), do mais
+ * recente ao mais antigo. Implementada em TransactionHistoryQueryImpl.
+ */
+public interface TransactionHistoryQuery {
+
+    /**
+     * Filtros do historico; campos nulos nao filtram. from e inclusivo, to exclusivo.
+     */
+    record Filter(String account, String category, String merchant, TransactionStatus status, Instant from, Instant to) {
+    }
+
+    /**
+     * Posicao da ultima transacao da pagina anterior; a proxima pagina comeca logo depois dela.
+     */
+    record Position(Instant createdAt, long id) {
+    }
+
+    /**
+     * Ate limit transacoes que atendem ao filtro e vem depois de after (nulo = primeira pagina),
+     * ordenadas por created_at e id decrescentes.
+     */
+    List<Transaction> findHistory(Filter filter, Position after, int limit, int timeoutMs);
+}
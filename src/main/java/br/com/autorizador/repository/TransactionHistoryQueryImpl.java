@@ -0,0 +1,65 @@
+package br.com.autorizador.repository;
+
+import br.com.autorizador.model.Transaction;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+class TransactionHistoryQueryImpl implements TransactionHistoryQuery {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Transaction> findHistory(Filter filter, Position after, int limit, int timeoutMs) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Transaction> query = cb.createQuery(Transaction.class);
+        Root<Transaction> transaction = query.from(Transaction.class);
+
+        // Igualdade na coluna lider do indice (conta, categoria ou comerciante) + faixa em
+        // created_at: a pagina sai do indice ja ordenada, sem ler as anteriores
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.isNotNull(transaction.get("createdAt")));
+        if (filter.account() != null) {
+            predicates.add(cb.equal(transaction.get("account"), filter.account()));
+        }
+        if (filter.category() != null) {
+            predicates.add(cb.equal(transaction.get("category"), filter.category()));
+        }
+        if (filter.merchant() != null) {
+            predicates.add(cb.equal(transaction.get("merchant"), filter.merchant()));
+        }
+        if (filter.status() != null) {
+            predicates.add(cb.equal(transaction.get("status"), filter.status()));
+        }
+        if (filter.from() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(transaction.<Instant>get("createdAt"), filter.from()));
+        }
+        if (filter.to() != null) {
+            predicates.add(cb.lessThan(transaction.<Instant>get("createdAt"), filter.to()));
+        }
+        if (after != null) {
+            // (created_at, id) < (after.createdAt, after.id)
+            predicates.add(cb.or(
+                    cb.lessThan(transaction.<Instant>get("createdAt"), after.createdAt()),
+                    cb.and(cb.equal(transaction.get("createdAt"), after.createdAt()),
+                            cb.lessThan(transaction.<Long>get("id"), after.id()))));
+        }
+
+        query.select(transaction)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.desc(transaction.get("createdAt")), cb.desc(transaction.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setHint("org.hibernate.readOnly", true)
+                .setHint("jakarta.persistence.query.timeout", timeoutMs)
+                .getResultList();
+    }
+}
@@ -2,6 +2,31 @@ package br.com.autorizador.repository;
 
 import br.com.autorizador.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-}
\ No newline at end of file
+import java.time.Instant;
+import java.util.List;
+
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionHistoryQuery {
+
+    @Query("SELECT COALESCE(MAX(t.journalSequence), 0) FROM Transaction t")
+    long findLastJournalSequence();
+
+    /**
+     * Transacoes com chave de idempotencia aprovadas desde since (recarga das chaves na
+     * subida), pelo indice de created_at: a leitura depende da janela, nao do historico.
+     */
+    @Query("SELECT t FROM Transaction t WHERE t.idempotencyKey IS NOT NULL AND t.createdAt >= :since")
+    List<Transaction> findWithIdempotencyKeySince(@Param("since") Instant since);
+
+    boolean existsByAccountAndIdempotencyKey(String account, String idempotencyKey);
+
+    /**
+     * Soma dos valores debitados por carteira (conta, categoria, total) nas transacoes do
+     * journal com sequencia em (after, upTo].
+     */
+    @Query("SELECT t.account, t.category, SUM(t.amount) FROM Transaction t "
+            + "WHERE t.journalSequence > :after AND t.journalSequence <= :upTo GROUP BY t.account, t.category")
+    List<Object[]> sumDebitsByWallet(@Param("after") long after, @Param("upTo") long upTo);
+}
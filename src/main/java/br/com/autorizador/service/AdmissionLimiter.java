@@ -0,0 +1,164 @@
+package br.com.autorizador.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controle de admissao na frente do {@link AuthorizationService}.
+ *
+ * - No maximo autorizador.admission.max-in-flight autorizacoes em andamento; as demais
+ *   esperam uma vaga por ate autorizador.admission.queue-timeout-ms e entao sao recusadas com
+ *   07 na hora, em vez de acumular na fila do Tomcat (ou em milhares de virtual threads) ate
+ *   estourar o prazo.
+ *
+ * - O limite padrao (0) segue o recurso que as autorizacoes disputam: com o ledger, o caminho
+ *   nao usa o banco e o limite e {@link #IN_FLIGHT_PER_SHARD} por shard; nas estrategias de
+ *   banco, cada autorizacao segura uma conexao e o limite e o tamanho do pool do Hikari.
+ *
+ * - A espera na fila (autorizador.admission.queue-wait), as recusas
+ *   (autorizador.admission.rejected) e as autorizacoes em andamento
+ *   (autorizador.admission.in-flight) sao expostas no Micrometer para ajustar os parametros.
+ */
+@Component
+public class AdmissionLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionLimiter.class);
+
+    // Com o ledger, um debito leva microssegundos na shard; o restante da autorizacao
+    // (comerciante, classificacao, journal) roda nas threads das requisicoes
+    static final int IN_FLIGHT_PER_SHARD = 16;
+
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long queueTimeoutNanos;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    private final Timer queueWaitTimer;
+    private final Counter rejectedCounter;
+
+    private long lastLoggedAdmitted;
+    private long lastLoggedRejected;
+    private long lastLoggedQueueWaitNanos;
+
+    public AdmissionLimiter(int maxInFlight, long queueTimeoutMs) {
+        this(maxInFlight, queueTimeoutMs, Metrics.globalRegistry);
+    }
+
+    public AdmissionLimiter(int maxInFlight, long queueTimeoutMs, MeterRegistry meterRegistry) {
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        queueWaitTimer = Timer.builder("autorizador.admission.queue-wait").publishPercentileHistogram().register(meterRegistry);
+        rejectedCounter = Counter.builder("autorizador.admission.rejected").register(meterRegistry);
+        Gauge.builder("autorizador.admission.in-flight", this, AdmissionLimiter::inFlight).register(meterRegistry);
+    }
+
+    @Autowired
+    public AdmissionLimiter(@Value("${autorizador.admission.max-in-flight:0}") int maxInFlight,
+                            @Value("${autorizador.admission.queue-timeout-ms:20}") long queueTimeoutMs,
+                            @Value("${autorizador.authorization.debit-strategy:LEDGER}") DebitStrategy debitStrategy,
+                            @Value("${autorizador.ledger.shards:0}") int ledgerShards,
+                            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                            MeterRegistry meterRegistry) {
+        this(maxInFlight > 0 ? maxInFlight : defaultMaxInFlight(debitStrategy, ledgerShards, poolSize), queueTimeoutMs, meterRegistry);
+    }
+
+    static int defaultMaxInFlight(DebitStrategy debitStrategy, int ledgerShards, int poolSize) {
+        if (debitStrategy != DebitStrategy.LEDGER) {
+            return poolSize;
+        }
+        int shards = ledgerShards > 0 ? ledgerShards : Runtime.getRuntime().availableProcessors();
+        return shards * IN_FLIGHT_PER_SHARD;
+    }
+
+    /**
+     * Tenta ocupar uma vaga, esperando no maximo o timeout da fila ou o que resta do prazo da
+     * autorizacao; quem recebe true deve chamar {@link #release()} ao terminar.
+     */
+    public boolean tryAcquire(Deadline deadline) {
+        if (permits.tryAcquire()) {
+            admitted.increment();
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(Math.min(queueTimeoutNanos, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        long waited = System.nanoTime() - start;
+        queueWaitNanos.add(waited);
+        maxQueueWaitNanos.accumulateAndGet(waited, Math::max);
+        queueWaitTimer.record(waited, TimeUnit.NANOSECONDS);
+        if (acquired) {
+            admitted.increment();
+        } else {
+            rejected.increment();
+            rejectedCounter.increment();
+        }
+        return acquired;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public long admittedCount() {
+        return admitted.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long totalQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${autorizador.admission.stats-log-interval-ms:60000}")
+    public void logStats() {
+        long currentAdmitted = admitted.sum();
+        long currentRejected = rejected.sum();
+        long currentQueueWaitNanos = queueWaitNanos.sum();
+        long windowAdmitted = currentAdmitted - lastLoggedAdmitted;
+        long windowRejected = currentRejected - lastLoggedRejected;
+        long windowQueueWaitNanos = currentQueueWaitNanos - lastLoggedQueueWaitNanos;
+        lastLoggedAdmitted = currentAdmitted;
+        lastLoggedRejected = currentRejected;
+        lastLoggedQueueWaitNanos = currentQueueWaitNanos;
+        long windowMaxQueueWaitNanos = maxQueueWaitNanos.getAndSet(0);
+        if (windowAdmitted + windowRejected > 0) {
+            log.info("Admissao: admitidas={} recusadas={} esperaTotalMs={} esperaMaxMs={} limite={}",
+                    windowAdmitted, windowRejected, TimeUnit.NANOSECONDS.toMillis(windowQueueWaitNanos),
+                    TimeUnit.NANOSECONDS.toMillis(windowMaxQueueWaitNanos), maxInFlight);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.AuthorizationOutcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metricas do caminho da autorizacao (expostas em /actuator/prometheus).
+ *
+ * - autorizador.authorization.stage: histograma de latencia por etapa.
+ *
+ * - autorizador.authorization.responses: respostas por codigo, motivo e categoria.
+ *
+ * Os medidores sao registrados uma unica vez (as categorias na primeira resposta de cada uma)
+ * e guardados em arrays indexados pelo ordinal do enum, entao registrar uma resposta e so uma
+ * leitura de mapa e um incremento, sem alocacao por requisicao.
+ *
+ * - As respostas do aquecimento da subida ({@link StartupWarmUp}) nao sao contadas.
+ */
+@Component
+public class AuthorizationMetrics {
+
+    public enum Stage {
+        MERCHANT_LOOKUP,
+        CLASSIFICATION,
+        JOURNAL_APPEND,
+        DATABASE_DEBIT
+    }
+
+    static final String NO_CATEGORY = "none";
+
+    private static final AuthorizationOutcome[] OUTCOMES = AuthorizationOutcome.values();
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer[] stageTimers;
+
+    private final ConcurrentMap<String, Counter[]> responsesByCategory = new ConcurrentHashMap<>();
+
+    private volatile boolean countingResponses = true;
+
+    @Autowired
+    public AuthorizationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Stage[] stages = Stage.values();
+        stageTimers = new Timer[stages.length];
+        for (Stage stage : stages) {
+            stageTimers[stage.ordinal()] = Timer.builder("autorizador.authorization.stage")
+                    .tag("stage", tagValue(stage))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+        responseCounters(NO_CATEGORY);
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Conta uma resposta; category e nula quando a categoria nao chegou a ser resolvida.
+     */
+    public void recordResponse(String category, AuthorizationOutcome outcome) {
+        if (!countingResponses) {
+            return;
+        }
+        responseCounters(category == null ? NO_CATEGORY : category)[outcome.ordinal()].increment();
+    }
+
+    void setCountingResponses(boolean countingResponses) {
+        this.countingResponses = countingResponses;
+    }
+
+    public double responseCount(String category, AuthorizationOutcome outcome) {
+        return responseCounters(category == null ? NO_CATEGORY : category)[outcome.ordinal()].count();
+    }
+
+    private Counter[] responseCounters(String category) {
+        Counter[] counters = responsesByCategory.get(category);
+        if (counters != null) {
+            return counters;
+        }
+        return responsesByCategory.computeIfAbsent(category, key -> {
+            Counter[] created = new Counter[OUTCOMES.length];
+            for (AuthorizationOutcome outcome : OUTCOMES) {
+                created[outcome.ordinal()] = Counter.builder("autorizador.authorization.responses")
+                        .tag("code", outcome.getResult().getCode())
+                        .tag("cause", tagValue(outcome))
+                        .tag("category", key)
+                        .register(meterRegistry);
+            }
+            return created;
+        });
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
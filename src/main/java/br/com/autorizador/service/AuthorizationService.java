@@ -1,88 +1,336 @@
 package br.com.autorizador.service;
 
+import br.com.autorizador.journal.JournalFullException;
+import br.com.autorizador.journal.TransactionJournal;
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.AuthorizationOutcome;
+import br.com.autorizador.model.AuthorizationResult;
 import br.com.autorizador.model.BenefitCategory;
-import br.com.autorizador.model.MerchantMapping;
 import br.com.autorizador.model.Transaction;
-import br.com.autorizador.repository.BenefitCategoryRepository;
-import br.com.autorizador.repository.MerchantMappingRepository;
-import br.com.autorizador.repository.TransactionRepository;
+import br.com.autorizador.model.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.TransactionTimedOutException;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Optional;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 public class AuthorizationService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthorizationService.class);
+
     @Autowired
-    private BenefitCategoryRepository benefitCategoryRepository;
+    private BalanceLedger balanceLedger;
 
     @Autowired
-    private TransactionRepository transactionRepository;
+    private TransactionJournal transactionJournal;
 
     @Autowired
-    private MerchantMappingRepository merchantMappingRepository;
+    private MerchantMatcher merchantMatcher;
 
     @Autowired
-    private TransactionTemplate transactionTemplate;
+    private MccClassifier mccClassifier;
 
-    @Transactional(timeout = 1) // Timeout de 100ms (1 décimo de segundo)
-    public String authorizeTransaction(Transaction transaction) {
-        try {
-            return transactionTemplate.execute(status -> {
-                // Verificar mapeamento do comerciante para corrigir o MCC
-                Optional<MerchantMapping> merchantMappingOpt = merchantMappingRepository.findByMerchant(transaction.getMerchant());
-                if (merchantMappingOpt.isPresent()) {
-                    transaction.setMcc(merchantMappingOpt.get().getCorrectedMcc());
-                }
+    @Autowired
+    private AuthorizationMetrics authorizationMetrics;
+
+    @Autowired
+    private DatabaseDebitService databaseDebitService;
+
+    // Prazo total de uma autorizacao (SLA da bandeira), da chegada da requisicao a resposta
+    @Value("${autorizador.authorization.timeout-ms:100}")
+    private long timeoutMs = 100;
+
+    // Sem saldo na categoria do MCC, debitar o valor do saldo CASH da conta
+    @Value("${autorizador.authorization.cash-fallback:false}")
+    private boolean cashFallback;
 
-                // Decidir a categoria baseada no MCC
-                String category = determineCategoryByMcc(transaction.getMcc());
+    // Onde o saldo e debitado: ledger em memoria (padrao) ou direto no banco
+    @Value("${autorizador.authorization.debit-strategy:LEDGER}")
+    private DebitStrategy debitStrategy = DebitStrategy.LEDGER;
 
-                return processTransaction(transaction, category);
-            });
-        } catch (TransactionTimedOutException t) {
-            return "{\"code\": \"07\"}";  // Timeout specific error
+    /**
+     * Destino das aprovacoes; fora do journal so no aquecimento ({@link StartupWarmUp}).
+     */
+    interface JournalSink {
+        JournalSink DISCARD = (transactions, timeoutNanos) -> { };
+
+        void append(List<Transaction> transactions, long timeoutNanos);
+    }
+
+    private final JournalSink journal = (transactions, timeoutNanos) -> transactionJournal.append(transactions, timeoutNanos);
+
+    /**
+     * Inicia o prazo de uma autorizacao; o controller chama na chegada da requisicao para que
+     * a espera na admissao tambem conte.
+     */
+    public Deadline newDeadline() {
+        return Deadline.after(timeoutMs);
+    }
+
+    public AuthorizationResult authorizeTransaction(Transaction transaction) {
+        return authorizeTransaction(transaction, newDeadline());
+    }
+
+    public AuthorizationResult authorizeTransaction(Transaction transaction, Deadline deadline) {
+        return authorizeTransaction(transaction, deadline, journal);
+    }
+
+    AuthorizationResult authorizeTransaction(Transaction transaction, Deadline deadline, JournalSink sink) {
+        AuthorizationOutcome invalid = validate(transaction);
+        if (invalid != null) {
+            authorizationMetrics.recordResponse(null, invalid);
+            return invalid.getResult();
+        }
+        String category = null;
+        AuthorizationOutcome outcome;
+        try {
+            category = resolveCategory(transaction, deadline);
+            outcome = processTransaction(transaction, category, deadline, sink);
         } catch (Exception e) {
-            return "{\"code\": \"07\"}";  // Outros problemas
+            outcome = outcomeOf(e);
         }
+        authorizationMetrics.recordResponse(category, outcome);
+        return outcome.getResult();
+    }
+
+    /**
+     * Autoriza um lote na ordem recebida e registra todas as aprovacoes de uma vez no journal.
+     *
+     * - Os debitos sao feitos item a item, na ordem do lote, entao itens que disputam o mesmo
+     *   saldo recebem exatamente as mesmas decisoes que chamadas sequenciais.
+     *
+     * - Se o registro do lote falhar, todos os debitos aprovados sao estornados e esses itens
+     *   passam a responder 07.
+     *
+     * - O prazo vale para o lote inteiro: itens alcancados depois de ele acabar respondem 07
+     *   sem debito.
+     *
+     * - Itens que repetem a chave de idempotencia de um item aprovado antes no mesmo lote
+     *   acompanham o resultado dele, inclusive o estorno; as chaves aprovadas so sao
+     *   confirmadas no ledger depois do registro do lote.
+     */
+    public List<AuthorizationResult> authorizeTransactions(List<Transaction> transactions) {
+        return authorizeTransactions(transactions, newDeadline());
+    }
+
+    public List<AuthorizationResult> authorizeTransactions(List<Transaction> transactions, Deadline deadline) {
+        return authorizeTransactions(transactions, deadline, journal);
     }
 
-    private String processTransaction(Transaction transaction, String category) {
-        // Bloquear a categoria correta e processar a transação
-        Optional<BenefitCategory> categoryOpt = benefitCategoryRepository.findByCategoryWithLock(category);
-        if (categoryOpt.isPresent()) {
-            BenefitCategory benefitCategory = categoryOpt.get();
-            if (benefitCategory.getBalance() >= transaction.getAmount()) {
-                return approveTransaction(transaction, benefitCategory);
-            } else {
-                return "{\"code\": \"51\"}";
+    List<AuthorizationResult> authorizeTransactions(List<Transaction> transactions, Deadline deadline, JournalSink sink) {
+        if (debitStrategy != DebitStrategy.LEDGER) {
+            // Debito no banco: um commit por item, na ordem do lote
+            List<AuthorizationResult> results = new ArrayList<>(transactions.size());
+            for (Transaction transaction : transactions) {
+                results.add(authorizeTransaction(transaction, deadline, sink));
+            }
+            return results;
+        }
+        AuthorizationOutcome[] outcomes = new AuthorizationOutcome[transactions.size()];
+        String[] categories = new String[transactions.size()];
+        List<Integer> approvedIndexes = new ArrayList<>();
+        List<Transaction> approved = new ArrayList<>();
+
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            outcomes[i] = validate(transaction);
+            if (outcomes[i] != null) {
+                continue;
+            }
+            try {
+                categories[i] = resolveCategory(transaction, deadline);
+                BalanceLedger.DebitResult result = debit(transaction, categories[i], deadline);
+                transaction.setCategory(debitedCategory(categories[i], result));
+                outcomes[i] = outcomeOf(result);
+                if (isApproved(result)) {
+                    transaction.setStatus(statusOf(result));
+                    transaction.setCreatedAt(Instant.now());
+                    approvedIndexes.add(i);
+                    approved.add(transaction);
+                }
+            } catch (Exception e) {
+                outcomes[i] = outcomeOf(e);
             }
-        } else {
-            return "{\"code\": \"07\"}";
         }
+
+        if (!approved.isEmpty()) {
+            AuthorizationOutcome failure = null;
+            try {
+                // Uma unica gravacao no journal para o lote; o writer insere em batches JDBC
+                appendToJournal(approved, deadline, sink);
+                for (Transaction transaction : approved) {
+                    balanceLedger.confirm(transaction.getAccount(), transaction.getIdempotencyKey());
+                }
+            } catch (RuntimeException e) {
+                failure = outcomeOf(e);
+                for (int i : approvedIndexes) {
+                    Transaction transaction = transactions.get(i);
+                    balanceLedger.credit(transaction.getAccount(), transaction.getCategory(), transaction.getAmount(), transaction.getIdempotencyKey());
+                    outcomes[i] = failure;
+                }
+            }
+
+            // Repeticoes de chaves aprovadas neste lote acompanham o original
+            Set<List<String>> batchKeys = new HashSet<>();
+            for (Transaction transaction : approved) {
+                if (transaction.getIdempotencyKey() != null) {
+                    batchKeys.add(List.of(transaction.getAccount(), transaction.getIdempotencyKey()));
+                }
+            }
+            for (int i = 0; i < outcomes.length; i++) {
+                Transaction transaction = transactions.get(i);
+                if (outcomes[i] == AuthorizationOutcome.DUPLICATE_PENDING && transaction.getAccount() != null
+                        && batchKeys.contains(List.of(transaction.getAccount(), transaction.getIdempotencyKey()))) {
+                    outcomes[i] = failure == null ? AuthorizationOutcome.DUPLICATE_APPROVED : failure;
+                }
+            }
+        }
+
+        List<AuthorizationResult> results = new ArrayList<>(outcomes.length);
+        for (int i = 0; i < outcomes.length; i++) {
+            authorizationMetrics.recordResponse(categories[i], outcomes[i]);
+            results.add(outcomes[i].getResult());
+        }
+        return results;
+    }
+
+    // Recusas antes de qualquer debito; null se a transacao pode seguir
+    private static AuthorizationOutcome validate(Transaction transaction) {
+        if (transaction.getAmount() <= 0) {
+            return AuthorizationOutcome.INVALID_AMOUNT;
+        }
+        // Uma aprovacao que o banco recusa ficaria presa no journal: melhor recusar aqui
+        if (tooLong(transaction.getAccount()) || tooLong(transaction.getMerchant())
+                || tooLong(transaction.getMcc()) || tooLong(transaction.getIdempotencyKey())) {
+            return AuthorizationOutcome.INVALID_FIELD;
+        }
+        return null;
+    }
+
+    private static boolean tooLong(String value) {
+        return value != null && value.length() > Transaction.MAX_TEXT_LENGTH;
+    }
+
+    private String resolveCategory(Transaction transaction, Deadline deadline) {
+        // Verificar mapeamento do comerciante para corrigir o MCC
+        deadline.check("merchant-lookup");
+        long start = System.nanoTime();
+        String correctedMcc = merchantMatcher.match(transaction.getMerchant());
+        if (correctedMcc != null) {
+            transaction.setMcc(correctedMcc);
+        }
+        long classificationStart = System.nanoTime();
+        authorizationMetrics.recordStage(AuthorizationMetrics.Stage.MERCHANT_LOOKUP, classificationStart - start);
+
+        // Decidir a categoria baseada no MCC
+        deadline.check("classification");
+        String category = mccClassifier.classify(transaction.getMcc());
+        authorizationMetrics.recordStage(AuthorizationMetrics.Stage.CLASSIFICATION, System.nanoTime() - classificationStart);
+        return category;
+    }
+
+    private AuthorizationOutcome processTransaction(Transaction transaction, String category, Deadline deadline, JournalSink sink) {
+        if (debitStrategy != DebitStrategy.LEDGER) {
+            // Saldo, debito e registro da transacao em um unico commit no banco
+            long start = System.nanoTime();
+            BalanceLedger.DebitResult result = databaseDebitService.authorize(transaction, category, cashFallback, debitStrategy, deadline);
+            authorizationMetrics.recordStage(AuthorizationMetrics.Stage.DATABASE_DEBIT, System.nanoTime() - start);
+            return outcomeOf(result);
+        }
+
+        // Debitar o saldo da carteira em memoria; o banco nao e mais o ponto de serializacao
+        long amount = transaction.getAmount();
+        BalanceLedger.DebitResult result = debit(transaction, category, deadline);
+        if (isApproved(result)) {
+            transaction.setStatus(statusOf(result));
+            approveTransaction(transaction, debitedCategory(category, result), amount, deadline, sink);
+        }
+        return outcomeOf(result);
+    }
+
+    private BalanceLedger.DebitResult debit(Transaction transaction, String category, Deadline deadline) {
+        deadline.check("ledger");
+        // A chave de idempotencia e conferida e registrada no mesmo passo do debito
+        if (cashFallback) {
+            // Categoria e CASH conferidas e debitadas em um unico passo do ledger
+            return balanceLedger.debitWithCashFallback(transaction.getAccount(), category, transaction.getAmount(),
+                    transaction.getIdempotencyKey(), deadline.remainingNanos());
+        }
+        return balanceLedger.debit(transaction.getAccount(), category, transaction.getAmount(),
+                transaction.getIdempotencyKey(), deadline.remainingNanos());
+    }
+
+    private static boolean isApproved(BalanceLedger.DebitResult result) {
+        return result == BalanceLedger.DebitResult.APPROVED || result == BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK;
+    }
+
+    private static String debitedCategory(String category, BalanceLedger.DebitResult result) {
+        return result == BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK ? BenefitCategory.CASH_CATEGORY : category;
+    }
+
+    static TransactionStatus statusOf(BalanceLedger.DebitResult result) {
+        return result == BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK ? TransactionStatus.APPROVED_CASH_FALLBACK : TransactionStatus.APPROVED;
     }
 
-    private String determineCategoryByMcc(String mcc) {
-        switch (mcc) {
-            case "5411":
-            case "5412":
-                return "FOOD";
-            case "5811":
-            case "5812":
-                return "MEAL";
+    private AuthorizationOutcome outcomeOf(BalanceLedger.DebitResult result) {
+        switch (result) {
+            case APPROVED:
+                return AuthorizationOutcome.APPROVED;  // Transação aprovada
+            case APPROVED_CASH_FALLBACK:
+                return AuthorizationOutcome.APPROVED_CASH_FALLBACK;  // Aprovada com saldo CASH
+            case INSUFFICIENT_FUNDS:
+                return AuthorizationOutcome.INSUFFICIENT_FUNDS;
+            case DUPLICATE_APPROVED:
+                return AuthorizationOutcome.DUPLICATE_APPROVED;  // Reenvio: codigo original, sem debito
+            case DUPLICATE_DECLINED:
+                return AuthorizationOutcome.DUPLICATE_DECLINED;
+            case DUPLICATE_PENDING:
+                return AuthorizationOutcome.DUPLICATE_PENDING;  // Original ainda sem registro: 07
+            case TIMED_OUT:
+                return AuthorizationOutcome.TIMEOUT;
             default:
-                return BenefitCategory.CASH_CATEGORY;
+                return AuthorizationOutcome.UNKNOWN_CATEGORY;
+        }
+    }
+
+    private AuthorizationOutcome outcomeOf(Exception e) {
+        if (e instanceof DeadlineExceededException) {
+            return AuthorizationOutcome.TIMEOUT;  // Prazo esgotado
+        }
+        if (e instanceof JournalFullException) {
+            return AuthorizationOutcome.JOURNAL_FULL;
+        }
+        log.warn("Falha inesperada na autorizacao", e);  // Outros problemas
+        return AuthorizationOutcome.EXCEPTION;
+    }
+
+    private void approveTransaction(Transaction transaction, String category, long amount, Deadline deadline, JournalSink sink) {
+        try {
+            // Registrar no journal; a gravacao no banco acontece em background. Depois do
+            // append a transacao esta registrada e a resposta e 00 mesmo que o prazo acabe
+            transaction.setCategory(category);
+            transaction.setCreatedAt(Instant.now());
+            appendToJournal(List.of(transaction), deadline, sink);
+        } catch (RuntimeException e) {
+            // Estornar o debito em memoria se a transacao nao puder ser registrada (ex.: journal cheio ou prazo esgotado)
+            balanceLedger.credit(transaction.getAccount(), category, amount, transaction.getIdempotencyKey());
+            throw e;
         }
+        // So agora um reenvio com a mesma chave pode receber 00
+        balanceLedger.confirm(transaction.getAccount(), transaction.getIdempotencyKey());
     }
 
-    private String approveTransaction(Transaction transaction, BenefitCategory category) {
-        category.setBalance(category.getBalance() - transaction.getAmount());
-        benefitCategoryRepository.save(category);
-        transactionRepository.save(transaction);
-        return "{\"code\": \"00\"}";  // Transação aprovada
+    private void appendToJournal(List<Transaction> transactions, Deadline deadline, JournalSink sink) {
+        deadline.check("journal");
+        long start = System.nanoTime();
+        sink.append(transactions, deadline.remainingNanos());
+        authorizationMetrics.recordStage(AuthorizationMetrics.Stage.JOURNAL_APPEND, System.nanoTime() - start);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Debito direto no banco para as estrategias {@link DebitStrategy#PESSIMISTIC} e
+ * {@link DebitStrategy#CONDITIONAL}: a conferencia do saldo, o debito e o insert da transacao
+ * aprovada acontecem em um unico commit, sem ledger nem journal.
+ *
+ * - Fallback para CASH: a carteira da categoria e sempre travada/atualizada antes da CASH, e
+ *   uma autorizacao direto em CASH so toca a CASH, entao as ordens de lock nunca se cruzam.
+ *
+ * - Idempotencia: uma chave ja gravada para a conta responde DUPLICATE_APPROVED sem debito.
+ *   No PESSIMISTIC a consulta acontece depois do lock da carteira, entao reenvios simultaneos
+ *   sao serializados; no CONDITIONAL ela nao e atomica com o debito, e quem garante e o indice
+ *   unico (account, idempotency_key): o insert do reenvio que perdeu a corrida falha, o debito
+ *   dele volta no rollback e a resposta e DUPLICATE_APPROVED.
+ *
+ * - Conflitos no CONDITIONAL (deadlock, timeout de lock, erro de serializacao) sao tentados de
+ *   novo ate autorizador.debit.max-retries vezes e entao vao para o PESSIMISTIC; contados em
+ *   autorizador.debit.conflicts e autorizador.debit.fallbacks.
+ */
+@Service
+public class DatabaseDebitService {
+
+    private static final Logger log = LoggerFactory.getLogger(DatabaseDebitService.class);
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    @Value("${autorizador.debit.max-retries:3}")
+    private int maxRetries = 3;
+
+    private Counter conflicts;
+    private Counter fallbacks;
+
+    @PostConstruct
+    void registerMeters() {
+        conflicts = Counter.builder("autorizador.debit.conflicts").register(meterRegistry);
+        fallbacks = Counter.builder("autorizador.debit.fallbacks").register(meterRegistry);
+    }
+
+    /**
+     * Debita e, se aprovada, grava a transacao com a categoria debitada. O prazo e conferido
+     * antes de cada tentativa; a espera por conexao fica limitada pelo connection-timeout do
+     * Hikari.
+     */
+    public BalanceLedger.DebitResult authorize(Transaction transaction, String category, boolean cashFallback,
+                                               DebitStrategy strategy, Deadline deadline) {
+        if (strategy == DebitStrategy.CONDITIONAL) {
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                deadline.check("database-debit");
+                try {
+                    return execute(transaction, category, cashFallback, true);
+                } catch (ConcurrencyFailureException e) {
+                    conflicts.increment();
+                    log.debug("Conflito no debito condicional de {}/{}", transaction.getAccount(), category, e);
+                }
+            }
+            fallbacks.increment();
+        }
+        deadline.check("database-debit");
+        return execute(transaction, category, cashFallback, false);
+    }
+
+    private BalanceLedger.DebitResult execute(Transaction transaction, String category, boolean cashFallback, boolean conditional) {
+        try {
+            return transactionTemplate.execute(status -> {
+                BalanceLedger.DebitResult result = conditional
+                        ? debitConditional(transaction, category, cashFallback)
+                        : debitPessimistic(transaction, category, cashFallback);
+                if (result == BalanceLedger.DebitResult.APPROVED || result == BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK) {
+                    transaction.setCategory(result == BalanceLedger.DebitResult.APPROVED ? category : BenefitCategory.CASH_CATEGORY);
+                    transaction.setStatus(AuthorizationService.statusOf(result));
+                    transaction.setCreatedAt(Instant.now());
+                    transactionRepository.save(transaction);
+                }
+                return result;
+            });
+        } catch (DataIntegrityViolationException e) {
+            transaction.setId(null);
+            // Reenvio simultaneo com a mesma chave: o indice unico recusou o segundo insert
+            if (isDuplicate(transaction)) {
+                return BalanceLedger.DebitResult.DUPLICATE_APPROVED;
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // Rollback: a proxima tentativa insere a transacao de novo
+            transaction.setId(null);
+            throw e;
+        }
+    }
+
+    private BalanceLedger.DebitResult debitPessimistic(Transaction transaction, String category, boolean cashFallback) {
+        String account = transaction.getAccount();
+        long amount = transaction.getAmount();
+        Optional<BenefitCategory> wallet = benefitCategoryRepository.findByCategoryWithLock(account, category);
+        if (wallet.isEmpty()) {
+            return BalanceLedger.DebitResult.UNKNOWN_CATEGORY;
+        }
+        if (isDuplicate(transaction)) {
+            return BalanceLedger.DebitResult.DUPLICATE_APPROVED;
+        }
+        if (debit(wallet.get(), amount)) {
+            return BalanceLedger.DebitResult.APPROVED;
+        }
+        if (cashFallback && !BenefitCategory.CASH_CATEGORY.equals(category)) {
+            Optional<BenefitCategory> cash = benefitCategoryRepository.findByCategoryWithLock(account, BenefitCategory.CASH_CATEGORY);
+            if (cash.isPresent() && debit(cash.get(), amount)) {
+                return BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK;
+            }
+        }
+        return BalanceLedger.DebitResult.INSUFFICIENT_FUNDS;
+    }
+
+    private BalanceLedger.DebitResult debitConditional(Transaction transaction, String category, boolean cashFallback) {
+        String account = transaction.getAccount();
+        long amount = transaction.getAmount();
+        if (isDuplicate(transaction)) {
+            return BalanceLedger.DebitResult.DUPLICATE_APPROVED;
+        }
+        if (benefitCategoryRepository.debitIfSufficient(account, category, amount) == 1) {
+            return BalanceLedger.DebitResult.APPROVED;
+        }
+        // Nenhuma linha alterada: so no caminho da recusa e preciso saber se a carteira existe
+        if (!benefitCategoryRepository.existsByAccountAndCategory(account, category)) {
+            return BalanceLedger.DebitResult.UNKNOWN_CATEGORY;
+        }
+        if (cashFallback && !BenefitCategory.CASH_CATEGORY.equals(category)
+                && benefitCategoryRepository.debitIfSufficient(account, BenefitCategory.CASH_CATEGORY, amount) == 1) {
+            return BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK;
+        }
+        return BalanceLedger.DebitResult.INSUFFICIENT_FUNDS;
+    }
+
+    private static boolean debit(BenefitCategory wallet, long amount) {
+        if (wallet.getBalance() < amount) {
+            return false;
+        }
+        // Gravado no commit pelo dirty checking, com a conferencia e o incremento da versao
+        wallet.setBalance(wallet.getBalance() - amount);
+        return true;
+    }
+
+    private boolean isDuplicate(Transaction transaction) {
+        return transaction.getIdempotencyKey() != null
+                && transactionRepository.existsByAccountAndIdempotencyKey(transaction.getAccount(), transaction.getIdempotencyKey());
+    }
+}
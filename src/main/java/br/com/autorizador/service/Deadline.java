@@ -0,0 +1,38 @@
+package br.com.autorizador.service;
+
+/**
+ * Prazo de uma autorizacao, contado a partir da chegada da requisicao.
+ *
+ * Cada etapa (admissao, comerciante, classificacao, ledger e journal) confere o tempo que
+ * resta antes de comecar e usa esse tempo como limite das suas esperas; com o prazo esgotado
+ * a autorizacao responde 07 sem executar as etapas seguintes.
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(long budgetMs) {
+        return new Deadline(System.nanoTime() + budgetMs * 1_000_000L);
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Falha com {@link DeadlineExceededException} se o prazo acabou antes da etapa.
+     */
+    public void check(String stage) {
+        if (isExpired()) {
+            throw new DeadlineExceededException(stage);
+        }
+    }
+}
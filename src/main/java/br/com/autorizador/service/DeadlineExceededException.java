@@ -0,0 +1,13 @@
+package br.com.autorizador.service;
+
+/**
+ * O prazo da autorizacao acabou antes ou durante uma etapa.
+ *
+ * Sem stack trace: sob sobrecarga essa excecao vira o caminho comum e so precisa do nome da etapa.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String stage) {
+        super("Prazo da autorizacao esgotado em " + stage, null, false, false);
+    }
+}
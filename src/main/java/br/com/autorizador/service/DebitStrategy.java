@@ -0,0 +1,19 @@
+package br.com.autorizador.service;
+
+/**
+ * Onde o saldo e conferido e debitado (autorizador.authorization.debit-strategy).
+ *
+ * - LEDGER: saldos em memoria ({@link br.com.autorizador.ledger.BalanceLedger}) e gravacao
+ *   write-behind pelo journal; so vale com uma unica instancia da aplicacao.
+ *
+ * - PESSIMISTIC: SELECT ... FOR UPDATE da carteira, debito e insert da transacao no mesmo
+ *   commit; o banco e a fonte da verdade, entao funciona com varias instancias.
+ *
+ * - CONDITIONAL: UPDATE condicional (balance >= valor) sem leitura nem lock explicito antes,
+ *   com novas tentativas e fallback para PESSIMISTIC em conflito.
+ */
+public enum DebitStrategy {
+    LEDGER,
+    PESSIMISTIC,
+    CONDITIONAL
+}
@@ -0,0 +1,77 @@
+package br.com.autorizador.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Le um arquivo por janelas mapeadas em memoria, sem copiar o conteudo para buffers do heap
+ * antes do parser. Arquivos maiores que uma janela (inclusive acima de 2 GB, o limite de um
+ * unico mapeamento) sao percorridos remapeando a proxima janela; as janelas ja lidas sao
+ * liberadas pelo GC.
+ */
+final class MappedFileInputStream extends InputStream {
+
+    static final long DEFAULT_WINDOW = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long window;
+    private long mappedUntil;
+    private MappedByteBuffer buffer;
+
+    MappedFileInputStream(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW);
+    }
+
+    MappedFileInputStream(Path path, long window) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = Math.min(Math.max(window, 1), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextWindow() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextWindow()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer == null ? 0 : buffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+    private boolean nextWindow() throws IOException {
+        if (buffer != null && buffer.hasRemaining()) {
+            return true;
+        }
+        if (mappedUntil >= size) {
+            return false;
+        }
+        long length = Math.min(window, size - mappedUntil);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappedUntil, length);
+        mappedUntil += length;
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.MccRule;
+import br.com.autorizador.repository.MccRuleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifica um MCC na categoria de beneficio a partir das regras da tabela mcc_rule.
+ *
+ * As regras sao compiladas em uma tabela densa (um short por MCC de 0000 a 9999) que e
+ * trocada atomicamente a cada recarga; classificar e uma leitura de array, sem alocacao
+ * e sem hashing de String. MCC nulo, fora do formato de 4 digitos ou sem regra cai em CASH.
+ */
+@Component
+public class MccClassifier implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(MccClassifier.class);
+
+    static final int MCC_COUNT = 10000;
+
+    private static final short DEFAULT_CATEGORY = 0;
+
+    private record Table(short[] categoryByMcc, String[] categories) {
+    }
+
+    @Autowired
+    private MccRuleRepository mccRuleRepository;
+
+    private volatile Table table = new Table(new short[MCC_COUNT], new String[]{BenefitCategory.CASH_CATEGORY});
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${autorizador.mcc-rules.reload-interval-ms:60000}",
+            initialDelayString = "${autorizador.mcc-rules.reload-interval-ms:60000}")
+    public void reload() {
+        try {
+            compile(mccRuleRepository.findAll());
+        } catch (RuntimeException e) {
+            // Mantem a tabela atual se o banco estiver indisponivel
+            log.warn("Falha ao recarregar as regras de MCC", e);
+        }
+    }
+
+    public void compile(List<MccRule> rules) {
+        Map<String, Short> indexes = new LinkedHashMap<>();
+        indexes.put(BenefitCategory.CASH_CATEGORY, DEFAULT_CATEGORY);
+
+        // Aplicar das regras mais fracas para as mais fortes: a ultima escrita vence
+        List<MccRule> ordered = new ArrayList<>(rules);
+        ordered.sort(Comparator.comparingInt(MccRule::getPriority)
+                .thenComparing(Comparator.comparingInt((MccRule rule) -> rule.getMccEnd() - rule.getMccStart()).reversed()));
+
+        short[] categoryByMcc = new short[MCC_COUNT];
+        for (MccRule rule : ordered) {
+            int start = Math.max(rule.getMccStart(), 0);
+            int end = Math.min(rule.getMccEnd(), MCC_COUNT - 1);
+            if (rule.getCategory() == null || start > end) {
+                log.warn("Regra de MCC ignorada: {}", rule);
+                continue;
+            }
+            short index = indexes.computeIfAbsent(rule.getCategory(), category -> (short) indexes.size());
+            for (int mcc = start; mcc <= end; mcc++) {
+                categoryByMcc[mcc] = index;
+            }
+        }
+
+        table = new Table(categoryByMcc, indexes.keySet().toArray(new String[0]));
+        log.info("Tabela de MCC compilada com {} regras e {} categorias", rules.size(), indexes.size());
+    }
+
+    public String classify(String mcc) {
+        Table current = table;
+        int code = parseMcc(mcc);
+        return current.categories[code < 0 ? DEFAULT_CATEGORY : current.categoryByMcc[code]];
+    }
+
+    /**
+     * Converte um MCC de exatamente 4 digitos para int, ou -1 se for nulo ou mal formado.
+     */
+    static int parseMcc(String mcc) {
+        if (mcc == null || mcc.length() != 4) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = mcc.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            code = code * 10 + digit;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,184 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.MerchantMapping;
+import br.com.autorizador.repository.MerchantMappingRepository;
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Importacao em massa de mapeamentos de comerciantes (POST /merchant-mappings/import).
+ *
+ * - CSV (merchant,correctedMcc; cabecalho opcional; campos entre aspas podem conter virgulas)
+ *   ou JSONL ({"merchant": "...", "correctedMcc": "5812"} por linha). Um nome cadastrado vale
+ *   como prefixo: "UBER EATS" cobre "UBER EATS SAO PAULO BR".
+ *
+ * - O arquivo inteiro e validado antes de gravar (MCC de 4 digitos, nome nao vazio e de ate
+ *   {@value MerchantMapping#MAX_MERCHANT_LENGTH} caracteres); qualquer
+ *   linha invalida recusa a importacao. Nomes repetidos no arquivo: vale a ultima linha.
+ *
+ * - A gravacao e um unico commit: com replace, a tabela passa a ter exatamente o arquivo;
+ *   sem replace, os nomes do arquivo sao inseridos ou atualizados e os demais ficam. Em
+ *   seguida o {@link MerchantMatcher} e recompilado; as demais instancias pegam a mudanca
+ *   na proxima recarga periodica.
+ */
+@Service
+public class MerchantMappingImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(MerchantMappingImporter.class);
+
+    public enum Format {
+        CSV,
+        JSONL
+    }
+
+    private final MerchantMappingRepository merchantMappingRepository;
+    private final MerchantMatcher merchantMatcher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public MerchantMappingImporter(MerchantMappingRepository merchantMappingRepository, MerchantMatcher merchantMatcher,
+                                   ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.merchantMappingRepository = merchantMappingRepository;
+        this.merchantMatcher = merchantMatcher;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Importa os mapeamentos e recompila o matcher; devolve quantos nomes distintos vieram no
+     * arquivo.
+     *
+     * @throws IllegalArgumentException linha invalida (nada e gravado)
+     */
+    public int importMappings(InputStream in, Format format, boolean replace) throws IOException {
+        Map<String, MerchantMapping> parsed = parse(in, format);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<MerchantMapping> changed = new ArrayList<>(parsed.values());
+            if (replace) {
+                merchantMappingRepository.deleteAllInBatch();
+            } else {
+                // Atualiza os nomes ja cadastrados em vez de duplicar
+                Map<String, MerchantMapping> pending = new LinkedHashMap<>(parsed);
+                changed.clear();
+                for (MerchantMapping existing : merchantMappingRepository.findAll()) {
+                    MerchantMapping imported = pending.remove(existing.getMerchantNormalized());
+                    if (imported != null) {
+                        existing.setMerchant(imported.getMerchant());
+                        existing.setCorrectedMcc(imported.getCorrectedMcc());
+                        changed.add(existing);
+                    }
+                }
+                changed.addAll(pending.values());
+            }
+            merchantMappingRepository.saveAll(changed);
+        });
+
+        int compiled = merchantMatcher.refresh();
+        log.info("Importados {} mapeamentos de comerciantes ({}, replace={}); {} nomes na trie",
+                parsed.size(), format, replace, compiled);
+        return parsed.size();
+    }
+
+    private Map<String, MerchantMapping> parse(InputStream in, Format format) throws IOException {
+        Map<String, MerchantMapping> mappings = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int lineNumber = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            String merchant;
+            String correctedMcc;
+            if (format == Format.CSV) {
+                List<String> fields = parseCsvLine(line, lineNumber);
+                if (lineNumber == 1 && "merchant".equalsIgnoreCase(fields.get(0).trim())) {
+                    continue; // Cabecalho
+                }
+                if (fields.size() != 2) {
+                    throw new IllegalArgumentException("Linha " + lineNumber + ": esperado merchant,correctedMcc");
+                }
+                merchant = fields.get(0);
+                correctedMcc = fields.get(1).trim();
+            } else {
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(line);
+                } catch (JacksonException e) {
+                    throw new IllegalArgumentException("Linha " + lineNumber + ": JSON invalido", e);
+                }
+                merchant = node.path("merchant").asText(null);
+                correctedMcc = node.hasNonNull("correctedMcc") ? node.get("correctedMcc").asText() : node.path("mcc").asText(null);
+            }
+
+            String normalized = MerchantMapping.normalize(merchant);
+            if (normalized == null || normalized.isEmpty()) {
+                throw new IllegalArgumentException("Linha " + lineNumber + ": comerciante vazio");
+            }
+            if (merchant.strip().length() > MerchantMapping.MAX_MERCHANT_LENGTH) {
+                throw new IllegalArgumentException("Linha " + lineNumber + ": comerciante com mais de "
+                        + MerchantMapping.MAX_MERCHANT_LENGTH + " caracteres");
+            }
+            if (MccClassifier.parseMcc(correctedMcc) < 0) {
+                throw new IllegalArgumentException("Linha " + lineNumber + ": MCC invalido: " + correctedMcc);
+            }
+            MerchantMapping mapping = new MerchantMapping();
+            mapping.setMerchant(merchant.strip());
+            mapping.setCorrectedMcc(correctedMcc);
+            mappings.remove(normalized);
+            mappings.put(normalized, mapping);
+        }
+        return mappings;
+    }
+
+    // Campos separados por virgula; entre aspas, virgulas sao literais e "" e uma aspa
+    static List<String> parseCsvLine(String line, int lineNumber) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Linha " + lineNumber + ": aspas sem fechamento");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
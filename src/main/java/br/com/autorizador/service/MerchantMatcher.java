@@ -0,0 +1,117 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.MerchantMapping;
+import br.com.autorizador.repository.MerchantMappingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Corrige o MCC pelo nome do comerciante a partir da tabela merchant_mapping.
+ *
+ * Os mapeamentos sao compilados em uma {@link MerchantTrie} que e trocada atomicamente a cada
+ * recarga (periodica, depois de uma importacao ou via POST /merchant-mappings/reload); a busca
+ * e um casamento do prefixo mais longo na trie, sem alocacao e sem acesso ao banco, entao
+ * "UBER EATS" cadastrado cobre "UBER EATS   SAO PAULO BR" e variacoes de caixa e espacos.
+ *
+ * A recarga periodica e a de uma importacao podem correr juntas: cada leitura do banco recebe
+ * um numero de ordem antes de comecar e as trocas sao serializadas, entao uma leitura mais
+ * antiga que a trie em uso e descartada em vez de desfazer uma importacao mais nova.
+ */
+@Component
+public class MerchantMatcher implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(MerchantMatcher.class);
+
+    @Autowired
+    private MerchantMappingRepository merchantMappingRepository;
+
+    private volatile MerchantTrie trie = MerchantTrie.EMPTY;
+
+    // Ordem das leituras e a da trie em uso (esta, sob o lock do objeto)
+    private final AtomicLong readSequence = new AtomicLong();
+    private long installedSequence;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${autorizador.merchant-mappings.reload-interval-ms:60000}",
+            initialDelayString = "${autorizador.merchant-mappings.reload-interval-ms:60000}")
+    public void reload() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Mantem a trie atual se o banco estiver indisponivel
+            log.warn("Falha ao recarregar os mapeamentos de comerciantes", e);
+        }
+    }
+
+    /**
+     * Le os mapeamentos do banco e recompila a trie; devolve o numero de nomes da trie em uso.
+     */
+    public int refresh() {
+        long sequence = readSequence.incrementAndGet();
+        return install(merchantMappingRepository.findAll(), sequence);
+    }
+
+    /**
+     * Monta a trie com os mapeamentos e a coloca no lugar da atual; para o mesmo nome
+     * normalizado vale o primeiro da lista. Devolve o numero de nomes distintos.
+     */
+    public int compile(List<MerchantMapping> mappings) {
+        return install(mappings, readSequence.incrementAndGet());
+    }
+
+    private synchronized int install(List<MerchantMapping> mappings, long sequence) {
+        if (sequence < installedSequence) {
+            log.debug("Leitura {} dos mapeamentos de comerciantes descartada; a trie em uso e da leitura {}",
+                    sequence, installedSequence);
+            return trie.size();
+        }
+        long start = System.nanoTime();
+        SortedMap<String, String> entries = new TreeMap<>();
+        for (MerchantMapping mapping : mappings) {
+            String merchant = MerchantMapping.normalize(mapping.getMerchant());
+            if (merchant == null || merchant.isEmpty() || mapping.getCorrectedMcc() == null) {
+                log.warn("Mapeamento de comerciante ignorado: {}", mapping);
+                continue;
+            }
+            entries.putIfAbsent(merchant, mapping.getCorrectedMcc());
+        }
+        MerchantTrie compiled = MerchantTrie.build(entries);
+        trie = compiled;
+        installedSequence = sequence;
+        log.info("Trie de comerciantes compilada com {} nomes em {}ms", compiled.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return compiled.size();
+    }
+
+    /**
+     * MCC corrigido do maior nome cadastrado que e prefixo do nome do comerciante (inteiro ou
+     * seguido de espaco ou pontuacao), ou null se nenhum casar.
+     */
+    public String match(String merchant) {
+        return trie.find(merchant);
+    }
+
+    public int size() {
+        return trie.size();
+    }
+
+    /**
+     * Ate limit nomes (normalizados) de comerciantes cadastrados.
+     */
+    public List<String> merchants(int limit) {
+        return trie.keys(limit);
+    }
+}
@@ -0,0 +1,263 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.MerchantMapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Trie compacta (radix) dos nomes normalizados de comerciantes, imutavel depois de montada.
+ *
+ * - Cadeias de nos sem valor e com um unico filho viram um unico rotulo de aresta; os nos,
+ *   arestas e rotulos ficam em arrays planos (arestas de cada no contiguas e ordenadas pelo
+ *   primeiro caractere), sem um objeto por no.
+ *
+ * - {@link #find(String)} normaliza o nome enquanto percorre a trie (mesmas regras de
+ *   {@link MerchantMapping#normalize(String)}), sem alocar, e devolve o valor do prefixo mais
+ *   longo que termina em uma fronteira de palavra: "UBER EATS" casa com
+ *   "Uber Eats   SAO PAULO BR" e com "UBER EATS*TRIP", mas nao com "UBER EATSX".
+ */
+final class MerchantTrie {
+
+    static final MerchantTrie EMPTY = build(new TreeMap<>());
+
+    private static final int NO_VALUE = -1;
+    private static final int END = -1;
+
+    // Valor de cada no (indice em values) ou NO_VALUE
+    private final int[] nodeValue;
+    // Arestas do no n: [edgeStart[n], edgeStart[n + 1])
+    private final int[] edgeStart;
+    private final char[] edgeFirst;
+    private final int[] labelStart;
+    private final int[] labelEnd;
+    private final int[] edgeTarget;
+    private final char[] labels;
+    private final String[] values;
+    private final int size;
+
+    private MerchantTrie(int[] nodeValue, int[] edgeStart, char[] edgeFirst, int[] labelStart, int[] labelEnd,
+                         int[] edgeTarget, char[] labels, String[] values, int size) {
+        this.nodeValue = nodeValue;
+        this.edgeStart = edgeStart;
+        this.edgeFirst = edgeFirst;
+        this.labelStart = labelStart;
+        this.labelEnd = labelEnd;
+        this.edgeTarget = edgeTarget;
+        this.labels = labels;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Monta a trie a partir de nome normalizado -> valor; nomes vazios sao ignorados.
+     */
+    static MerchantTrie build(SortedMap<String, String> entries) {
+        String[] keys = entries.keySet().stream().filter(key -> !key.isEmpty()).toArray(String[]::new);
+        int n = keys.length;
+
+        // Valores repetidos (o mesmo MCC para muitos comerciantes) sao guardados uma vez
+        Map<String, Integer> valueIndexes = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        int[] keyValue = new int[n];
+        int totalChars = 0;
+        for (int i = 0; i < n; i++) {
+            keyValue[i] = valueIndexes.computeIfAbsent(entries.get(keys[i]), value -> {
+                values.add(value);
+                return values.size() - 1;
+            });
+            totalChars += keys[i].length();
+        }
+
+        // Todo no alem da raiz tem valor ou ao menos dois filhos: no maximo 2n nos
+        int maxNodes = 2 * n + 1;
+        int[] nodeValue = new int[maxNodes];
+        int[] edgeStart = new int[maxNodes + 1];
+        char[] edgeFirst = new char[maxNodes];
+        int[] labelStart = new int[maxNodes];
+        int[] labelEnd = new int[maxNodes];
+        int[] edgeTarget = new int[maxNodes];
+        char[] labels = new char[totalChars];
+
+        // Montagem em largura: as arestas de cada no ficam contiguas; a tarefa i descreve o
+        // no i (chaves [lo, hi) com prefixo comum de tamanho depth)
+        int[] taskLo = new int[maxNodes];
+        int[] taskHi = new int[maxNodes];
+        int[] taskDepth = new int[maxNodes];
+        taskHi[0] = n;
+        int nodes = 1;
+        int edges = 0;
+        int labelCount = 0;
+        for (int node = 0; node < nodes; node++) {
+            int lo = taskLo[node];
+            int hi = taskHi[node];
+            int depth = taskDepth[node];
+            nodeValue[node] = NO_VALUE;
+            if (lo < hi && keys[lo].length() == depth) {
+                nodeValue[node] = keyValue[lo];
+                lo++;
+            }
+            edgeStart[node] = edges;
+            for (int a = lo; a < hi; ) {
+                char c = keys[a].charAt(depth);
+                int b = a + 1;
+                while (b < hi && keys[b].charAt(depth) == c) {
+                    b++;
+                }
+                // Chaves ordenadas: o prefixo comum do grupo e o da primeira com a ultima
+                int end = commonPrefix(keys[a], keys[b - 1]);
+                edgeFirst[edges] = c;
+                labelStart[edges] = labelCount;
+                keys[a].getChars(depth, end, labels, labelCount);
+                labelCount += end - depth;
+                labelEnd[edges] = labelCount;
+                edgeTarget[edges] = nodes;
+                taskLo[nodes] = a;
+                taskHi[nodes] = b;
+                taskDepth[nodes] = end;
+                nodes++;
+                edges++;
+                a = b;
+            }
+        }
+        edgeStart[nodes] = edges;
+
+        return new MerchantTrie(Arrays.copyOf(nodeValue, nodes), Arrays.copyOf(edgeStart, nodes + 1),
+                Arrays.copyOf(edgeFirst, edges), Arrays.copyOf(labelStart, edges), Arrays.copyOf(labelEnd, edges),
+                Arrays.copyOf(edgeTarget, edges), Arrays.copyOf(labels, labelCount), values.toArray(new String[0]), n);
+    }
+
+    /**
+     * Valor do maior nome cadastrado que e prefixo (em fronteira de palavra) do nome
+     * normalizado do comerciante, ou null.
+     */
+    String find(String merchant) {
+        if (merchant == null) {
+            return null;
+        }
+        int length = merchant.length();
+        int i = 0;
+        while (i < length && Character.isWhitespace(merchant.charAt(i))) {
+            i++;
+        }
+        int node = 0;
+        int best = NO_VALUE;
+        int previous = END;
+        while (true) {
+            int next = peek(merchant, i);
+            if (nodeValue[node] != NO_VALUE && isBoundary(previous, next)) {
+                best = nodeValue[node];
+            }
+            if (next == END) {
+                break;
+            }
+            int edge = findEdge(node, (char) next);
+            if (edge < 0) {
+                break;
+            }
+            // O rotulo inteiro precisa casar: nao ha valores no meio de uma aresta
+            int k = labelStart[edge];
+            for (; k < labelEnd[edge]; k++) {
+                int c = peek(merchant, i);
+                if (c != labels[k]) {
+                    break;
+                }
+                previous = c;
+                i = advance(merchant, i);
+            }
+            if (k < labelEnd[edge]) {
+                break;
+            }
+            node = edgeTarget[edge];
+        }
+        return best == NO_VALUE ? null : values[best];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Ate limit nomes cadastrados, em ordem alfabetica.
+     */
+    List<String> keys(int limit) {
+        List<String> keys = new ArrayList<>();
+        collect(0, new StringBuilder(), keys, limit);
+        return keys;
+    }
+
+    private void collect(int node, StringBuilder prefix, List<String> keys, int limit) {
+        if (nodeValue[node] != NO_VALUE && keys.size() < limit) {
+            keys.add(prefix.toString());
+        }
+        for (int edge = edgeStart[node]; edge < edgeStart[node + 1] && keys.size() < limit; edge++) {
+            int length = prefix.length();
+            prefix.append(labels, labelStart[edge], labelEnd[edge] - labelStart[edge]);
+            collect(edgeTarget[edge], prefix, keys, limit);
+            prefix.setLength(length);
+        }
+    }
+
+    private int findEdge(int node, char c) {
+        int lo = edgeStart[node];
+        int hi = edgeStart[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = edgeFirst[mid];
+            if (first < c) {
+                lo = mid + 1;
+            } else if (first > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Proximo caractere normalizado a partir de i: espacos em sequencia viram um so e os do
+    // fim do nome sao descartados
+    private static int peek(String merchant, int i) {
+        int length = merchant.length();
+        if (i >= length) {
+            return END;
+        }
+        char c = merchant.charAt(i);
+        if (!Character.isWhitespace(c)) {
+            return Character.toUpperCase(c);
+        }
+        while (i < length && Character.isWhitespace(merchant.charAt(i))) {
+            i++;
+        }
+        return i >= length ? END : ' ';
+    }
+
+    private static int advance(String merchant, int i) {
+        if (!Character.isWhitespace(merchant.charAt(i))) {
+            return i + 1;
+        }
+        while (i < merchant.length() && Character.isWhitespace(merchant.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // Um prefixo so vale se nao corta uma palavra no meio (letra/digito seguido de letra/digito)
+    private static boolean isBoundary(int previous, int next) {
+        return next == END || !Character.isLetterOrDigit(previous) || !Character.isLetterOrDigit(next);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
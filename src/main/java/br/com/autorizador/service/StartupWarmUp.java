@@ -0,0 +1,149 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.AuthorizationResult;
+import br.com.autorizador.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Aquecimento antes de a aplicacao ficar pronta (roda antes do ApplicationReadyEvent, entao
+ * /actuator/health/readiness so responde UP depois dele).
+ *
+ * - Com autorizador.warmup.enabled: executa autorizador.warmup.iterations autorizacoes
+ *   sinteticas (JSON do corpo, comerciante, classificacao, debito, aprovacao, codificacao da
+ *   resposta) para que o JIT compile o caminho antes do primeiro cliente. Os saldos, as
+ *   regras de MCC e a trie de comerciantes ja foram carregados na criacao dos beans.
+ *
+ * - As autorizacoes sinteticas debitam uma carteira criada so no ledger em memoria para o
+ *   aquecimento, com uma conta que nenhum portador tem, e as aprovacoes vao para um destino
+ *   que as descarta em vez do journal. A carteira e removida no fim: nenhum saldo real,
+ *   journal ou banco e alterado, e as respostas nao entram na contagem. Com uma estrategia
+ *   de debito no banco a carteira nao existe la e as autorizacoes sao recusadas.
+ *
+ * - Mede o tempo do inicio da JVM ate a primeira autorizacao recebida
+ *   (autorizador.startup.first-request); o Spring Boot ja publica application.ready.time.
+ */
+@Component
+public class StartupWarmUp implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    // Saldo de cada categoria da carteira de aquecimento: nenhuma autorizacao e recusada
+    private static final long BALANCE = Long.MAX_VALUE / 2;
+
+    private final AuthorizationService authorizationService;
+    private final BalanceLedger balanceLedger;
+    private final MerchantMatcher merchantMatcher;
+    private final AuthorizationMetrics authorizationMetrics;
+    private final ObjectMapper objectMapper;
+
+    @Value("${autorizador.warmup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${autorizador.warmup.iterations:20000}")
+    private int iterations = 20000;
+
+    @Value("${autorizador.warmup.max-duration-ms:15000}")
+    private long maxDurationMs = 15000;
+
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private volatile double firstRequestMs = Double.NaN;
+
+    @Autowired
+    public StartupWarmUp(AuthorizationService authorizationService, BalanceLedger balanceLedger, MerchantMatcher merchantMatcher,
+                         AuthorizationMetrics authorizationMetrics, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.authorizationService = authorizationService;
+        this.balanceLedger = balanceLedger;
+        this.merchantMatcher = merchantMatcher;
+        this.authorizationMetrics = authorizationMetrics;
+        this.objectMapper = objectMapper;
+        TimeGauge.builder("autorizador.startup.first-request", this, TimeUnit.MILLISECONDS, warmUp -> warmUp.firstRequestMs)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        // Nomes cadastrados com sufixo, como chegam do adquirente, e um sem mapeamento
+        List<String> merchants = new ArrayList<>();
+        for (String merchant : merchantMatcher.merchants(16)) {
+            merchants.add(merchant + "   SAO PAULO BR");
+        }
+        merchants.add("WARMUP MERCHANT");
+
+        String account = "warmup-" + UUID.randomUUID();
+        balanceLedger.addWallet(account, BALANCE);
+        authorizationMetrics.setCountingResponses(false);
+        int executed = 0;
+        int approved = 0;
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDurationMs);
+            for (; executed < iterations && System.nanoTime() < deadline; executed++) {
+                Transaction transaction = parse(account, executed, merchants.get(executed % merchants.size()));
+                AuthorizationResult result = authorizationService.authorizeTransaction(transaction,
+                        authorizationService.newDeadline(), AuthorizationService.JournalSink.DISCARD);
+                result.writeTo(OutputStream.nullOutputStream());
+                if (result == AuthorizationResult.APPROVED) {
+                    approved++;
+                }
+                if (executed % 16 == 0) {
+                    authorizationService.authorizeTransactions(List.of(parse(account, executed, merchants.get(0)),
+                            parse(account, executed + 1, merchants.get(0))), authorizationService.newDeadline(),
+                            AuthorizationService.JournalSink.DISCARD);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            authorizationMetrics.setCountingResponses(true);
+            balanceLedger.removeWallet(account);
+        }
+        log.info("Aquecimento concluido em {}ms: {} comerciantes na trie, {} autorizacoes sinteticas ({} aprovadas)",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), merchantMatcher.size(), executed, approved);
+    }
+
+    /**
+     * Chamado a cada autorizacao recebida; so a primeira faz alguma coisa.
+     */
+    public void recordRequest() {
+        if (firstRequestSeen.get() || !firstRequestSeen.compareAndSet(false, true)) {
+            return;
+        }
+        firstRequestMs = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        log.info("Primeira autorizacao recebida {}ms apos o inicio da JVM", (long) firstRequestMs);
+    }
+
+    private Transaction parse(String account, int iteration, String merchant) throws IOException {
+        // Passa pelo mesmo desserializador do corpo da requisicao (inclusive o de centavos)
+        byte[] json = objectMapper.writeValueAsBytes(Map.of(
+                "account", account,
+                "totalAmount", new BigDecimal("1.00"),
+                "mcc", String.valueOf(1000 + iteration % 9000),
+                "merchant", merchant));
+        return objectMapper.readValue(json, Transaction.class);
+    }
+}
@@ -0,0 +1,12 @@
+package br.com.autorizador.service;
+
+/**
+ * Todas as vagas de consulta de historico estao ocupadas; a consulta e recusada em vez de
+ * esperar, para nao tomar conexoes do pool usadas pelas autorizacoes.
+ */
+public class TransactionHistoryBusyException extends RuntimeException {
+
+    public TransactionHistoryBusyException(int maxConcurrent) {
+        super("Consultas de historico em andamento no limite (" + maxConcurrent + ")");
+    }
+}
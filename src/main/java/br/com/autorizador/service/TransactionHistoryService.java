@@ -0,0 +1,127 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.model.TransactionPage;
+import br.com.autorizador.repository.TransactionHistoryQuery;
+import br.com.autorizador.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Historico de transacoes aprovadas (GET /transactions).
+ *
+ * - Paginacao por chave: o cursor guarda (created_at, id) da ultima transacao entregue e a
+ *   pagina seguinte e lida no indice a partir dali, com custo independente da profundidade.
+ *
+ * - Le apenas a tabela transaction, gravada pelo journal em background; saldos, ledger e
+ *   regras de autorizacao nao sao tocados. A leitura e read-only em READ COMMITTED, que no
+ *   H2 (MVCC) e no PostgreSQL nao bloqueia nem e bloqueada pelas gravacoes do journal.
+ *
+ * - No maximo autorizador.history.max-concurrent consultas ao mesmo tempo, cada uma com
+ *   timeout no banco; as excedentes sao recusadas na hora para nao esgotar o pool do Hikari.
+ */
+@Service
+public class TransactionHistoryService {
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionTemplate readOnly;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int defaultLimit;
+    private final int maxLimit;
+    private final int timeoutMs;
+
+    @Autowired
+    public TransactionHistoryService(TransactionRepository transactionRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${autorizador.history.max-concurrent:2}") int maxConcurrent,
+                                     @Value("${autorizador.history.default-limit:50}") int defaultLimit,
+                                     @Value("${autorizador.history.max-limit:500}") int maxLimit,
+                                     @Value("${autorizador.history.timeout-ms:2000}") int timeoutMs) {
+        this.transactionRepository = transactionRepository;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.readOnly.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Pagina do historico que atende ao filtro, a partir do cursor (nulo = mais recentes).
+     * Exige conta, categoria ou comerciante, para que a consulta use um dos indices.
+     *
+     * @throws IllegalArgumentException     filtro sem coluna indexada, limite ou cursor invalido
+     * @throws TransactionHistoryBusyException todas as vagas de consulta ocupadas
+     */
+    public TransactionPage find(TransactionHistoryQuery.Filter filter, String cursor, Integer limit) {
+        if (filter.account() == null && filter.category() == null && filter.merchant() == null) {
+            throw new IllegalArgumentException("Informe account, category ou merchant");
+        }
+        int pageSize = limit == null ? defaultLimit : limit;
+        if (pageSize < 1 || pageSize > maxLimit) {
+            throw new IllegalArgumentException("limit deve estar entre 1 e " + maxLimit);
+        }
+        TransactionHistoryQuery.Position after = cursor == null ? null : decodeCursor(cursor);
+
+        if (!permits.tryAcquire()) {
+            throw new TransactionHistoryBusyException(maxConcurrent);
+        }
+        try {
+            // Um registro a mais so para saber se existe proxima pagina
+            List<Transaction> found = readOnly.execute(status ->
+                    transactionRepository.findHistory(filter, after, pageSize + 1, timeoutMs));
+            if (found.size() <= pageSize) {
+                return new TransactionPage(found, null);
+            }
+            List<Transaction> page = found.subList(0, pageSize);
+            Transaction last = page.get(pageSize - 1);
+            return new TransactionPage(List.copyOf(page), encodeCursor(last.getCreatedAt(), last.getId()));
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Cursor opaco: base64url de [segundos long][nanos int][id long]
+    static String encodeCursor(Instant createdAt, long id) {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES);
+        buffer.putLong(createdAt.getEpochSecond()).putInt(createdAt.getNano()).putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static TransactionHistoryQuery.Position decodeCursor(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor invalido", e);
+        }
+        if (bytes.length != Long.BYTES + Integer.BYTES + Long.BYTES) {
+            throw new IllegalArgumentException("Cursor invalido");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        if (nanos < 0 || nanos > 999_999_999) {
+            throw new IllegalArgumentException("Cursor invalido");
+        }
+        try {
+            return new TransactionHistoryQuery.Position(Instant.ofEpochSecond(seconds, nanos), buffer.getLong());
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Cursor invalido", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.AuthorizationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modo offline: com autorizador.replay.file, autoriza o arquivo JSONL inteiro pelo
+ * {@link TransactionStreamAuthorizer} na subida, lendo o arquivo mapeado em memoria, e encerra
+ * a aplicacao ao terminar (depois de o journal gravar as aprovacoes no shutdown).
+ *
+ * Os resultados vao para autorizador.replay.output, um por linha na ordem do arquivo; sem
+ * ele, so o resumo por codigo e registrado no log.
+ */
+@Component
+public class TransactionReplay implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionReplay.class);
+
+    @Autowired
+    private TransactionStreamAuthorizer transactionStreamAuthorizer;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    @Value("${autorizador.replay.file:}")
+    private String file;
+
+    @Value("${autorizador.replay.output:}")
+    private String output;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (file.isBlank()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<AuthorizationResult, Long> totals;
+        try (InputStream in = new MappedFileInputStream(Path.of(file));
+             OutputStream out = output.isBlank() ? OutputStream.nullOutputStream()
+                     : new BufferedOutputStream(Files.newOutputStream(Path.of(output)), 64 * 1024)) {
+            totals = transactionStreamAuthorizer.authorize(in, out);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long count = totals.values().stream().mapToLong(Long::longValue).sum();
+        log.info("Replay de {} concluido em {}ms: {} transacoes, {}", file, elapsedMs, count, totals);
+        System.exit(SpringApplication.exit(applicationContext));
+    }
+}
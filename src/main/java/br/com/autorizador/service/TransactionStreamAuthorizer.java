@@ -0,0 +1,205 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.AuthorizationOutcome;
+import br.com.autorizador.model.AuthorizationResult;
+import br.com.autorizador.model.Transaction;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Autoriza um fluxo de transacoes em JSON delimitado por linha (NDJSON) e escreve um resultado
+ * por linha ({"code": "00"}), na ordem de entrada.
+ *
+ * - A entrada e lida aos poucos pelo parser de streaming do Jackson e as transacoes sao
+ *   agrupadas em blocos de autorizador.stream.chunk-size, cada um autorizado como um lote
+ *   ({@link AuthorizationService#authorizeTransactions}): um prazo, uma vaga na admissao e uma
+ *   gravacao no journal por bloco. A memoria fica limitada aos blocos em andamento, qualquer
+ *   que seja o tamanho da entrada.
+ *
+ * - autorizador.stream.ordering: SEQUENTIAL autoriza um bloco por vez, com as mesmas decisoes
+ *   que chamadas sequenciais; CONCURRENT autoriza ate autorizador.stream.parallelism blocos ao
+ *   mesmo tempo (transacoes que disputam o mesmo saldo podem ser decididas fora da ordem do
+ *   arquivo). Nos dois casos os resultados saem na ordem de entrada.
+ *
+ * - Um item que nao vira uma transacao (valor invalido, tipo errado) responde 07 e o fluxo
+ *   continua; um erro de sintaxe JSON responde 07 para aquele item e encerra o fluxo, porque
+ *   nao ha como saber onde o proximo item comeca.
+ */
+@Service
+public class TransactionStreamAuthorizer {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionStreamAuthorizer.class);
+
+    private static final byte LINE_SEPARATOR = '\n';
+
+    public enum Ordering {
+        SEQUENTIAL,
+        CONCURRENT
+    }
+
+    @Autowired
+    private AuthorizationService authorizationService;
+
+    @Autowired
+    private AdmissionLimiter admissionLimiter;
+
+    @Autowired
+    private AuthorizationMetrics authorizationMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${autorizador.stream.chunk-size:100}")
+    private int chunkSize = 100;
+
+    @Value("${autorizador.stream.ordering:SEQUENTIAL}")
+    private Ordering ordering = Ordering.SEQUENTIAL;
+
+    @Value("${autorizador.stream.parallelism:4}")
+    private int parallelism = 4;
+
+    /**
+     * Le o fluxo ate o fim, escreve os resultados em out (com flush a cada bloco) e devolve a
+     * quantidade de respostas por codigo. Nao fecha nenhum dos dois streams.
+     */
+    public Map<AuthorizationResult, Long> authorize(InputStream in, OutputStream out) throws IOException {
+        Map<AuthorizationResult, Long> totals = new EnumMap<>(AuthorizationResult.class);
+        int window = ordering == Ordering.CONCURRENT ? Math.max(parallelism, 1) : 1;
+        Deque<Future<AuthorizationResult[]>> pending = new ArrayDeque<>(window);
+
+        // Virtual threads: os blocos passam a maior parte do tempo esperando shards e journal
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             MappingIterator<Transaction> items = objectMapper.readerFor(Transaction.class)
+                     .without(JsonParser.Feature.AUTO_CLOSE_SOURCE).readValues(in)) {
+            boolean more = true;
+            while (more) {
+                List<Transaction> chunk = new ArrayList<>(chunkSize);
+                more = readChunk(items, chunk);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                if (window == 1) {
+                    write(authorizeChunk(chunk), out, totals);
+                    continue;
+                }
+                if (pending.size() == window) {
+                    write(await(pending.removeFirst()), out, totals);
+                }
+                pending.addLast(executor.submit(() -> authorizeChunk(chunk)));
+            }
+            while (!pending.isEmpty()) {
+                write(await(pending.removeFirst()), out, totals);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+        return totals;
+    }
+
+    /**
+     * Preenche o bloco; itens invalidos entram como null. Devolve false quando a entrada acabou
+     * (ou nao pode mais ser lida).
+     */
+    private boolean readChunk(MappingIterator<Transaction> items, List<Transaction> chunk) throws IOException {
+        while (chunk.size() < chunkSize) {
+            try {
+                if (!items.hasNextValue()) {
+                    return false;
+                }
+                chunk.add(items.nextValue());
+            } catch (StreamReadException e) {
+                log.debug("Fluxo de autorizacao interrompido por JSON invalido", e);
+                chunk.add(null);
+                return false;
+            } catch (DatabindException e) {
+                // O iterador pula o restante do item na proxima leitura
+                log.debug("Item invalido no fluxo de autorizacao", e);
+                chunk.add(null);
+            }
+        }
+        return true;
+    }
+
+    private AuthorizationResult[] authorizeChunk(List<Transaction> chunk) {
+        AuthorizationResult[] results = new AuthorizationResult[chunk.size()];
+        List<Transaction> valid = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunk.get(i) == null) {
+                results[i] = AuthorizationOutcome.EXCEPTION.getResult();
+                authorizationMetrics.recordResponse(null, AuthorizationOutcome.EXCEPTION);
+            } else {
+                valid.add(chunk.get(i));
+            }
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        Deadline deadline = authorizationService.newDeadline();
+        List<AuthorizationResult> authorized = null;
+        if (admissionLimiter.tryAcquire(deadline)) {
+            try {
+                authorized = authorizationService.authorizeTransactions(valid, deadline);
+            } finally {
+                admissionLimiter.release();
+            }
+        }
+
+        int next = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            if (authorized == null) {
+                // Sobrecarga: o bloco inteiro e recusado, como no endpoint de lote
+                results[i] = AuthorizationOutcome.OVERLOAD.getResult();
+                authorizationMetrics.recordResponse(null, AuthorizationOutcome.OVERLOAD);
+            } else {
+                results[i] = authorized.get(next++);
+            }
+        }
+        return results;
+    }
+
+    private static AuthorizationResult[] await(Future<AuthorizationResult[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Fluxo de autorizacao interrompido", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Falha ao autorizar bloco do fluxo", e.getCause());
+        }
+    }
+
+    private static void write(AuthorizationResult[] results, OutputStream out, Map<AuthorizationResult, Long> totals) throws IOException {
+        for (AuthorizationResult result : results) {
+            result.writeTo(out);
+            out.write(LINE_SEPARATOR);
+            totals.merge(result, 1L, Long::sum);
+        }
+        out.flush();
+    }
+}
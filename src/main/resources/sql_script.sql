@@ -1,41 +1,79 @@
 -- Drop existing tables if they exist
+DROP TABLE IF EXISTS mcc_rule;
 DROP TABLE IF EXISTS merchant_mapping;
 DROP TABLE IF EXISTS transaction;
 DROP TABLE IF EXISTS benefit_category;
+DROP SEQUENCE IF EXISTS transaction_seq;
 
 -- Create tables
 CREATE TABLE benefit_category (
                                   id BIGINT AUTO_INCREMENT PRIMARY KEY, -- Identificador único para cada categoria, chave primária
+                                  account VARCHAR(255) NOT NULL,        -- Conta (portador) dona do saldo, não nulo
                                   mcc VARCHAR(255),                     -- Merchant Category Code, pode ser nulo
-                                  balance DOUBLE NOT NULL,              -- Saldo da categoria, não nulo
-                                  category VARCHAR(255) NOT NULL        -- Nome da categoria, não nulo
+                                  balance BIGINT NOT NULL,              -- Saldo da categoria em centavos, não nulo
+                                  category VARCHAR(255) NOT NULL,       -- Nome da categoria, não nulo
+                                  version BIGINT DEFAULT 0 NOT NULL,    -- Versao para controle otimista, incrementada a cada debito
+                                  CONSTRAINT uk_benefit_category_account_category UNIQUE (account, category)
 );
 CREATE TABLE merchant_mapping (
                                   id BIGINT AUTO_INCREMENT PRIMARY KEY, -- Identificador único para cada mapeamento, chave primária
                                   merchant VARCHAR(255) NOT NULL,       -- Nome do comerciante, não nulo
+                                  merchant_normalized VARCHAR(255) NOT NULL, -- Nome normalizado (maiusculas, espacos colapsados); a busca e na trie em memoria, sem indice
                                   corrected_mcc VARCHAR(255)            -- MCC corrigido, pode ser nulo
 );
+CREATE TABLE mcc_rule (
+                          id BIGINT AUTO_INCREMENT PRIMARY KEY, -- Identificador único para cada regra, chave primária
+                          mcc_start INT NOT NULL,               -- Primeiro MCC do intervalo (inclusive)
+                          mcc_end INT NOT NULL,                 -- Último MCC do intervalo (inclusive)
+                          category VARCHAR(255) NOT NULL,       -- Categoria de benefício do intervalo
+                          priority INT DEFAULT 0 NOT NULL       -- Maior prioridade vence em intervalos sobrepostos
+);
 
 -- Table `transaction`
 CREATE TABLE transaction (
                              id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                             account VARCHAR(255),
                              mcc VARCHAR(255),
-                             amount DOUBLE,
-                             merchant VARCHAR(255)
+                             amount BIGINT,                        -- Valor em centavos
+                             merchant VARCHAR(255),
+                             category VARCHAR(255),
+                             idempotency_key VARCHAR(255),          -- Chave de idempotencia enviada pelo gateway, pode ser nula
+                             created_at TIMESTAMP WITH TIME ZONE,    -- Momento da aprovacao
+                             status VARCHAR(32) DEFAULT 'APPROVED' NOT NULL, -- APPROVED ou APPROVED_CASH_FALLBACK
+                             journal_sequence BIGINT,
+                             CONSTRAINT uk_transaction_journal_sequence UNIQUE (journal_sequence)
 );
+-- Unico: uma chave de idempotencia por conta (transacoes sem chave, NULL, nao conflitam)
+CREATE UNIQUE INDEX idx_transaction_account_idempotency_key ON transaction (account, idempotency_key);
+-- Historico (GET /transactions): filtro por conta, categoria ou comerciante, do mais recente ao
+-- mais antigo; o id desempata transacoes com o mesmo created_at na paginacao por chave
+CREATE INDEX idx_transaction_account_created_at ON transaction (account, created_at, id);
+CREATE INDEX idx_transaction_category_created_at ON transaction (category, created_at, id);
+CREATE INDEX idx_transaction_merchant_created_at ON transaction (merchant, created_at, id);
+-- Recarga das chaves de idempotencia na subida: so as transacoes dentro da janela
+CREATE INDEX idx_transaction_created_at ON transaction (created_at);
 
+-- Ids das transacoes gravadas pela aplicacao (alocados em blocos de 50, acima dos dados iniciais)
+CREATE SEQUENCE transaction_seq START WITH 1000 INCREMENT BY 50;
 
 -- Insert initial data into benefit_category
-INSERT INTO benefit_category (mcc, balance, category) VALUES ('5411', 100.0, 'FOOD');
-INSERT INTO benefit_category (mcc, balance, category) VALUES (NULL, 200.0, 'CASH');
-INSERT INTO benefit_category (mcc, balance, category) VALUES ('5811', 300.0, 'MEAL');
+INSERT INTO benefit_category (account, mcc, balance, category) VALUES ('123', '5411', 10000, 'FOOD');
+INSERT INTO benefit_category (account, mcc, balance, category) VALUES ('123', NULL, 20000, 'CASH');
+INSERT INTO benefit_category (account, mcc, balance, category) VALUES ('123', '5811', 30000, 'MEAL');
+INSERT INTO benefit_category (account, mcc, balance, category) VALUES ('456', '5411', 10000, 'FOOD');
+INSERT INTO benefit_category (account, mcc, balance, category) VALUES ('456', NULL, 20000, 'CASH');
+INSERT INTO benefit_category (account, mcc, balance, category) VALUES ('456', '5811', 30000, 'MEAL');
+
+-- Insert initial data into mcc_rule (MCCs sem regra caem em CASH)
+INSERT INTO mcc_rule (mcc_start, mcc_end, category) VALUES (5411, 5412, 'FOOD');
+INSERT INTO mcc_rule (mcc_start, mcc_end, category) VALUES (5811, 5812, 'MEAL');
 
 -- Insert initial data into transaction table for example purposes
-INSERT INTO transaction (mcc, amount, merchant) VALUES ('5411', 50.0, 'Grocery Store');
-INSERT INTO transaction (mcc, amount, merchant) VALUES ('5812', 150.0, 'Restaurant');
-INSERT INTO transaction (mcc, amount, merchant) VALUES ('9999', 200.0, 'Unknown Merchant');
+INSERT INTO transaction (account, mcc, amount, merchant, created_at) VALUES ('123', '5411', 5000, 'Grocery Store', CURRENT_TIMESTAMP);
+INSERT INTO transaction (account, mcc, amount, merchant, created_at) VALUES ('123', '5812', 15000, 'Restaurant', CURRENT_TIMESTAMP);
+INSERT INTO transaction (account, mcc, amount, merchant, created_at) VALUES ('456', '9999', 20000, 'Unknown Merchant', CURRENT_TIMESTAMP);
 
 -- Insert initial data into merchant_mapping
-INSERT INTO merchant_mapping (merchant, corrected_mcc) VALUES ('Grocery Store', '5411');
-INSERT INTO merchant_mapping (merchant, corrected_mcc) VALUES ('Restaurant', '5812');
-INSERT INTO merchant_mapping (merchant, corrected_mcc) VALUES ('ATM', '6011');
\ No newline at end of file
+INSERT INTO merchant_mapping (merchant, merchant_normalized, corrected_mcc) VALUES ('Grocery Store', 'GROCERY STORE', '5411');
+INSERT INTO merchant_mapping (merchant, merchant_normalized, corrected_mcc) VALUES ('Restaurant', 'RESTAURANT', '5812');
+INSERT INTO merchant_mapping (merchant, merchant_normalized, corrected_mcc) VALUES ('ATM', 'ATM', '6011');
\ No newline at end of file
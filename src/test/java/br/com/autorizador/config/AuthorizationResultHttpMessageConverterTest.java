@@ -0,0 +1,43 @@
+package br.com.autorizador.config;
+
+import br.com.autorizador.model.AuthorizationResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthorizationResultHttpMessageConverterTest {
+
+    private final AuthorizationResultHttpMessageConverter converter = new AuthorizationResultHttpMessageConverter();
+
+    @Test
+    public void testWrite_SingleResult() throws Exception {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(AuthorizationResult.APPROVED, MediaType.APPLICATION_JSON, message);
+
+        assertEquals("{\"code\": \"00\"}", message.getBodyAsString());
+        assertEquals(14, message.getHeaders().getContentLength());
+        assertEquals(MediaType.APPLICATION_JSON, message.getHeaders().getContentType());
+    }
+
+    @Test
+    public void testWrite_BatchResults() throws Exception {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        AuthorizationResult[] results = {AuthorizationResult.APPROVED, AuthorizationResult.INSUFFICIENT_FUNDS,
+                AuthorizationResult.PROCESSING_ERROR};
+        converter.write(results, MediaType.APPLICATION_JSON, message);
+
+        String expected = "[{\"code\": \"00\"}, {\"code\": \"51\"}, {\"code\": \"07\"}]";
+        assertEquals(expected, message.getBodyAsString());
+        assertEquals(expected.length(), message.getHeaders().getContentLength());
+    }
+
+    @Test
+    public void testCanWrite_OnlyAuthorizationResults() {
+        assertTrue(converter.canWrite(AuthorizationResult.class, MediaType.APPLICATION_JSON));
+        assertTrue(converter.canWrite(AuthorizationResult[].class, null));
+        assertFalse(converter.canWrite(String.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canRead(AuthorizationResult.class, MediaType.APPLICATION_JSON));
+    }
+}
@@ -0,0 +1,398 @@
+package br.com.autorizador.journal;
+
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.model.TransactionStatus;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class TransactionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testJournalFile_RoundTripAndTornTail() throws Exception {
+        Path path = dir.resolve("journal.log");
+        try (JournalFile file = new JournalFile(path, false)) {
+            Transaction first = transaction(1, "123", "FOOD", 1050);
+            first.setIdempotencyKey("req-1");
+            first.setCreatedAt(Instant.ofEpochMilli(1_700_000_000_000L));
+            Transaction second = transaction(2, "456", "CASH", 2000);
+            second.setStatus(TransactionStatus.APPROVED_CASH_FALLBACK);
+            file.append(List.of(first, second));
+            file.append(List.of(transaction(3, "123", "MEAL", 100)));
+        }
+
+        // Simular um crash no meio da escrita do ultimo registro
+        long fullSize = Files.size(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(fullSize - 3);
+        }
+
+        try (JournalFile file = new JournalFile(path, false)) {
+            List<Transaction> transactions = file.readAll();
+            assertEquals(2, transactions.size());
+            assertEquals(1L, transactions.get(0).getJournalSequence());
+            assertEquals("123", transactions.get(0).getAccount());
+            assertEquals("FOOD", transactions.get(0).getCategory());
+            assertEquals(1050, transactions.get(0).getAmount());
+            assertEquals("Loja", transactions.get(0).getMerchant());
+            assertEquals("req-1", transactions.get(0).getIdempotencyKey());
+            assertEquals(Instant.ofEpochMilli(1_700_000_000_000L), transactions.get(0).getCreatedAt());
+            assertNull(transactions.get(1).getMcc());
+            assertNull(transactions.get(1).getIdempotencyKey());
+            assertNull(transactions.get(1).getCreatedAt());
+            assertEquals(TransactionStatus.APPROVED, transactions.get(0).getStatus());
+            assertEquals(TransactionStatus.APPROVED_CASH_FALLBACK, transactions.get(1).getStatus());
+
+            // A cauda corrompida e removida e novos registros continuam o arquivo valido
+            file.append(List.of(transaction(3, "123", "MEAL", 100)));
+            assertEquals(3, file.readAll().size());
+        }
+    }
+
+    @Test
+    public void testJournalFile_StatusCodesArePinned() {
+        // Codigos ja gravados em arquivos de journal: nao podem mudar com a ordem do enum
+        assertEquals(0, TransactionStatus.APPROVED.code());
+        assertEquals(1, TransactionStatus.APPROVED_CASH_FALLBACK.code());
+        assertEquals(TransactionStatus.APPROVED_CASH_FALLBACK, TransactionStatus.fromCode((byte) 1));
+        assertThrows(IllegalArgumentException.class, () -> TransactionStatus.fromCode((byte) 9));
+    }
+
+    @Test
+    public void testJournalFile_FailedAppendLeavesNoTornBytes() throws Exception {
+        Path path = dir.resolve("journal.log");
+        ShortWriteChannel channel = new ShortWriteChannel(
+                FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try (JournalFile file = new JournalFile(channel, false)) {
+            file.append(List.of(transaction(1, "123", "FOOD", 1050)));
+            long sizeBefore = file.size();
+
+            // Escrita curta seguida de erro (disco cheio): parte do lote chegou ao arquivo
+            channel.failAfterBytes = 10;
+            assertThrows(IOException.class, () -> file.append(List.of(transaction(2, "123", "FOOD", 200),
+                    transaction(3, "456", "MEAL", 300))));
+            assertEquals(sizeBefore, file.size());
+
+            channel.failAfterBytes = -1;
+            file.append(List.of(transaction(2, "789", "CASH", 400)));
+        }
+
+        // Nada foi perdido na leitura: o registro seguinte nao ficou atras de bytes rasgados
+        try (JournalFile file = new JournalFile(path, false)) {
+            List<Transaction> transactions = file.readAll();
+            assertEquals(2, transactions.size());
+            assertEquals("123", transactions.get(0).getAccount());
+            assertEquals("789", transactions.get(1).getAccount());
+        }
+    }
+
+    @Test
+    public void testJournalFile_OversizedFieldIsRejectedBeforeWriting() throws Exception {
+        Path path = dir.resolve("journal.log");
+        try (JournalFile file = new JournalFile(path, false)) {
+            file.append(List.of(transaction(1, "123", "FOOD", 1050)));
+            long sizeBefore = file.size();
+
+            // O tamanho dos textos e um short: 32 KiB ou mais dariam a volta
+            Transaction oversized = transaction(2, "123", "FOOD", 200);
+            oversized.setMerchant("X".repeat(JournalFile.MAX_FIELD_BYTES + 1));
+            assertThrows(IOException.class, () -> file.append(List.of(oversized)));
+            assertEquals(sizeBefore, file.size());
+
+            Transaction largest = transaction(2, "123", "FOOD", 200);
+            largest.setMerchant("X".repeat(JournalFile.MAX_FIELD_BYTES));
+            file.append(List.of(largest));
+            assertEquals(JournalFile.MAX_FIELD_BYTES, file.readAll().get(1).getMerchant().length());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecover_ReplaysAcknowledgedApprovalsNotYetPersisted() throws Exception {
+        Path path = dir.resolve("journal.log");
+        try (JournalFile file = new JournalFile(path, false)) {
+            file.append(List.of(transaction(41, "123", "FOOD", 100), transaction(42, "123", "FOOD", 200),
+                    transaction(43, "123", "FOOD", 300), transaction(44, "456", "CASH", 400)));
+        }
+
+        TransactionRepository transactionRepository = mock(TransactionRepository.class);
+        BenefitCategoryRepository benefitCategoryRepository = mock(BenefitCategoryRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionRepository.findLastJournalSequence()).thenReturn(41L); // 41 chegou ao banco antes do crash
+        doAnswer(invocation -> {
+            invocation.<Consumer<?>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        TransactionJournal journal = journal(path, transactionRepository, benefitCategoryRepository, transactionTemplate);
+        journal.recover();
+
+        ArgumentCaptor<List<Transaction>> replayed = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).saveAll(replayed.capture());
+        assertEquals(List.of(42L, 43L, 44L), replayed.getValue().stream().map(Transaction::getJournalSequence).toList());
+        verify(benefitCategoryRepository).debitBalance("123", "FOOD", 500);
+        verify(benefitCategoryRepository).debitBalance("456", "CASH", 400);
+        assertEquals(0, Files.size(path));
+
+        // Novas aprovacoes continuam a numeracao e chegam ao banco pelo writer em background
+        Transaction next = transaction(0, "123", "MEAL", 700);
+        journal.append(next);
+        assertEquals(45L, next.getJournalSequence());
+        assertTrue(journal.awaitPersisted(5000));
+        verify(benefitCategoryRepository).debitBalance("123", "MEAL", 700);
+        journal.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriter_KeyAlreadyInDatabaseIsDroppedNotRetriedForever() throws Exception {
+        TransactionRepository transactionRepository = mock(TransactionRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<?>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        // Reenvio aprovado de novo depois da janela do ledger: a chave ja esta no banco
+        when(transactionRepository.existsByAccountAndIdempotencyKey("123", "gw-1")).thenReturn(true);
+        when(transactionRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Transaction> batch = invocation.getArgument(0);
+            if (batch.stream().anyMatch(transaction -> "gw-1".equals(transaction.getIdempotencyKey()))) {
+                throw new DataIntegrityViolationException("idx_transaction_account_idempotency_key");
+            }
+            return batch;
+        });
+
+        TransactionJournal journal = journal(dir.resolve("journal.log"), transactionRepository,
+                mock(BenefitCategoryRepository.class), transactionTemplate);
+        journal.recover();
+        Transaction retry = transaction(0, "123", "FOOD", 100);
+        retry.setIdempotencyKey("gw-1");
+        journal.append(retry);
+
+        assertTrue(journal.awaitPersisted(5000));
+        assertNull(retry.getIdempotencyKey());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testWriter_RecordRejectedOnEveryAttemptIsSetAsideAndTheRestIsPersisted() throws Exception {
+        TransactionRepository transactionRepository = mock(TransactionRepository.class);
+        BenefitCategoryRepository benefitCategoryRepository = mock(BenefitCategoryRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<?>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        // Comerciante maior que a coluna: o banco recusa a linha em toda tentativa
+        List<Long> saved = new ArrayList<>();
+        when(transactionRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Transaction> batch = invocation.getArgument(0);
+            if (batch.stream().anyMatch(transaction -> transaction.getMerchant().length() > 255)) {
+                throw new DataIntegrityViolationException("Value too long for column MERCHANT");
+            }
+            batch.forEach(transaction -> saved.add(transaction.getJournalSequence()));
+            return batch;
+        });
+
+        Path path = dir.resolve("journal.log");
+        TransactionJournal journal = journal(path, transactionRepository, benefitCategoryRepository, transactionTemplate);
+        journal.recover();
+        Transaction rejected = transaction(0, "456", "CASH", 300);
+        rejected.setMerchant("X".repeat(256));
+        journal.append(List.of(transaction(0, "123", "FOOD", 100), transaction(0, "123", "FOOD", 200), rejected,
+                transaction(0, "123", "MEAL", 400), transaction(0, "123", "MEAL", 500)));
+
+        // O writer continua esvaziando: os demais chegam ao banco em ordem e o buffer libera
+        assertTrue(journal.awaitPersisted(5000));
+        assertEquals(List.of(1L, 2L, 4L, 5L), saved);
+        verify(benefitCategoryRepository).debitBalance("456", "CASH", 300);
+        Transaction next = transaction(0, "123", "FOOD", 600);
+        journal.append(next);
+        assertTrue(journal.awaitPersisted(5000));
+        assertEquals(6L, saved.get(saved.size() - 1));
+        journal.shutdown();
+
+        try (JournalFile rejectedFile = new JournalFile(Path.of(path + ".rejected"), false)) {
+            assertEquals(List.of(3L), rejectedFile.readAll().stream().map(Transaction::getJournalSequence).toList());
+        }
+    }
+
+    @Test
+    public void testAppend_BatchLargerThanCapacityFailsWithoutWaiting() throws Exception {
+        TransactionJournal journal = journal(dir.resolve("journal.log"), mock(TransactionRepository.class),
+                mock(BenefitCategoryRepository.class), mock(TransactionTemplate.class));
+        journal.recover();
+
+        // Capacidade 16: um lote de 17 nunca caberia no buffer, nem esperando
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < journal.capacity() + 1; i++) {
+            batch.add(transaction(0, "123", "FOOD", 100));
+        }
+        assertThrows(IllegalArgumentException.class, () -> journal.append(batch));
+        assertEquals(0L, batch.get(0).getJournalSequence());
+
+        Transaction next = transaction(0, "123", "FOOD", 100);
+        journal.append(next);
+        assertEquals(1L, next.getJournalSequence());
+        journal.shutdown();
+    }
+
+    private static TransactionJournal journal(Path path, TransactionRepository transactionRepository,
+                                              BenefitCategoryRepository benefitCategoryRepository,
+                                              TransactionTemplate transactionTemplate) {
+        TransactionJournal journal = new TransactionJournal();
+        ReflectionTestUtils.setField(journal, "transactionRepository", transactionRepository);
+        ReflectionTestUtils.setField(journal, "benefitCategoryRepository", benefitCategoryRepository);
+        ReflectionTestUtils.setField(journal, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(journal, "path", path.toString());
+        ReflectionTestUtils.setField(journal, "fsync", false);
+        ReflectionTestUtils.setField(journal, "capacity", 16);
+        ReflectionTestUtils.setField(journal, "batchSize", 8);
+        ReflectionTestUtils.setField(journal, "offerTimeoutMs", 10L);
+        return journal;
+    }
+
+    private static Transaction transaction(long sequence, String account, String category, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setJournalSequence(sequence);
+        transaction.setAccount(account);
+        transaction.setCategory(category);
+        transaction.setAmount(amount);
+        transaction.setMerchant("Loja");
+        return transaction;
+    }
+
+    // Grava no maximo failAfterBytes bytes e entao falha; -1 = sem falha
+    private static class ShortWriteChannel extends FileChannel {
+        private final FileChannel delegate;
+        int failAfterBytes = -1;
+
+        ShortWriteChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failAfterBytes < 0) {
+                return delegate.write(src);
+            }
+            if (failAfterBytes == 0) {
+                throw new IOException("No space left on device");
+            }
+            ByteBuffer partial = src.slice(src.position(), Math.min(failAfterBytes, src.remaining()));
+            int written = delegate.write(partial);
+            src.position(src.position() + written);
+            failAfterBytes -= written;
+            return written;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package br.com.autorizador.ledger;
+
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BalanceLedgerTest {
+
+    @Test
+    public void testDebit_ApprovesUntilBalanceIsExhausted() {
+        BalanceLedger ledger = new BalanceLedger(2);
+        ledger.load(List.of(new BenefitCategory("123", "FOOD", 10000), new BenefitCategory("456", "MEAL", 10000)));
+
+        assertEquals(BalanceLedger.DebitResult.APPROVED, ledger.debit("123", "FOOD", 6000));
+        assertEquals(BalanceLedger.DebitResult.INSUFFICIENT_FUNDS, ledger.debit("123", "FOOD", 6000));
+        assertEquals(BalanceLedger.DebitResult.APPROVED, ledger.debit("123", "FOOD", 4000));
+        assertEquals(BalanceLedger.DebitResult.UNKNOWN_CATEGORY, ledger.debit("123", "MEAL", 1));
+        assertEquals(BalanceLedger.DebitResult.UNKNOWN_CATEGORY, ledger.debit("789", "FOOD", 1));
+        assertEquals(BalanceLedger.DebitResult.UNKNOWN_CATEGORY, ledger.debit(null, "FOOD", 1));
+        assertEquals(0, ledger.balanceOf("123", "FOOD"));
+        assertEquals(10000, ledger.balanceOf("456", "MEAL"));
+
+        // Conta ausente e tratada como carteira desconhecida, nao como NullPointerException
+        assertThrows(IllegalArgumentException.class, () -> ledger.balanceOf("789", "FOOD"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.balanceOf(null, "FOOD"));
+    }
+
+    @Test
+    public void testDebitWithCashFallback_UsesCashOnlyWhenCategoryIsShort() {
+        BalanceLedger ledger = new BalanceLedger(2);
+        ledger.load(List.of(new BenefitCategory("123", "FOOD", 1000), new BenefitCategory("123", "CASH", 5000),
+                new BenefitCategory("456", "FOOD", 1000)));
+
+        assertEquals(BalanceLedger.DebitResult.APPROVED, ledger.debitWithCashFallback("123", "FOOD", 600, Long.MAX_VALUE));
+        assertEquals(BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK, ledger.debitWithCashFallback("123", "FOOD", 600, Long.MAX_VALUE));
+        assertEquals(400, ledger.balanceOf("123", "FOOD"));
+        assertEquals(4400, ledger.balanceOf("123", "CASH"));
+
+        // Nenhuma das duas carteiras cobre o valor: nada e debitado
+        assertEquals(BalanceLedger.DebitResult.INSUFFICIENT_FUNDS, ledger.debitWithCashFallback("123", "FOOD", 4500, Long.MAX_VALUE));
+        assertEquals(400, ledger.balanceOf("123", "FOOD"));
+        assertEquals(4400, ledger.balanceOf("123", "CASH"));
+
+        // Conta sem carteira CASH
+        assertEquals(BalanceLedger.DebitResult.INSUFFICIENT_FUNDS, ledger.debitWithCashFallback("456", "FOOD", 2000, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testDebitWithCashFallback_MixedConcurrentLoadKeepsTotals() throws Exception {
+        BalanceLedger ledger = new BalanceLedger(4);
+        ledger.load(List.of(new BenefitCategory("123", "FOOD", 50000), new BenefitCategory("123", "MEAL", 50000),
+                new BenefitCategory("123", "CASH", 50000)));
+
+        // Threads debitando FOOD e MEAL com fallback e CASH direto, todas disputando o saldo CASH
+        int threads = 12;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String category = List.of("FOOD", "MEAL", "CASH").get(t % 3);
+            futures.add(executor.submit(() -> {
+                start.await();
+                long debited = 0;
+                for (int i = 0; i < 3000; i++) {
+                    BalanceLedger.DebitResult result = ledger.debitWithCashFallback("123", category, 11, Long.MAX_VALUE);
+                    if (result == BalanceLedger.DebitResult.APPROVED || result == BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK) {
+                        debited += 11;
+                    }
+                }
+                return debited;
+            }));
+        }
+        start.countDown();
+
+        long debited = 0;
+        for (Future<Long> future : futures) {
+            debited += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        long remaining = ledger.balanceOf("123", "FOOD") + ledger.balanceOf("123", "MEAL") + ledger.balanceOf("123", "CASH");
+        assertEquals(150000, debited + remaining);
+        assertTrue(ledger.balanceOf("123", "CASH") < 11);
+    }
+
+    @Test
+    public void testDebit_IdempotencyKeyDebitsOnlyOnce() {
+        BalanceLedger ledger = new BalanceLedger(2);
+        ledger.load(List.of(new BenefitCategory("123", "FOOD", 10000), new BenefitCategory("456", "FOOD", 10000)));
+
+        assertEquals(BalanceLedger.DebitResult.APPROVED, ledger.debit("123", "FOOD", 6000, "req-1", Long.MAX_VALUE));
+        // Antes do registro no journal o reenvio nao pode receber 00
+        assertEquals(BalanceLedger.DebitResult.DUPLICATE_PENDING, ledger.debit("123", "FOOD", 6000, "req-1", Long.MAX_VALUE));
+        ledger.confirm("123", "req-1");
+        assertEquals(BalanceLedger.DebitResult.DUPLICATE_APPROVED, ledger.debit("123", "FOOD", 6000, "req-1", Long.MAX_VALUE));
+        assertEquals(BalanceLedger.DebitResult.INSUFFICIENT_FUNDS, ledger.debit("123", "FOOD", 6000, "req-2", Long.MAX_VALUE));
+        assertEquals(BalanceLedger.DebitResult.DUPLICATE_DECLINED, ledger.debit("123", "FOOD", 1, "req-2", Long.MAX_VALUE));
+        assertEquals(4000, ledger.balanceOf("123", "FOOD"));
+
+        // A chave vale por conta
+        assertEquals(BalanceLedger.DebitResult.APPROVED, ledger.debit("456", "FOOD", 6000, "req-1", Long.MAX_VALUE));
+
+        // Estorno com a chave: o proximo envio e autorizado de novo
+        ledger.credit("123", "FOOD", 6000, "req-1");
+        assertEquals(BalanceLedger.DebitResult.APPROVED, ledger.debit("123", "FOOD", 6000, "req-1", Long.MAX_VALUE));
+        assertEquals(4000, ledger.balanceOf("123", "FOOD"));
+    }
+
+    @Test
+    public void testDebit_ConcurrentRetriesWithSameKeyDebitOnce() throws Exception {
+        BalanceLedger ledger = new BalanceLedger(4);
+        ledger.load(List.of(new BenefitCategory("123", "FOOD", 100000)));
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int approved = 0;
+                for (int i = 0; i < 1000; i++) {
+                    if (ledger.debit("123", "FOOD", 10, "req-" + i, Long.MAX_VALUE) == BalanceLedger.DebitResult.APPROVED) {
+                        approved++;
+                    }
+                }
+                return approved;
+            }));
+        }
+        start.countDown();
+
+        int approved = 0;
+        for (Future<Integer> future : futures) {
+            approved += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Cada uma das 1000 chaves debitou uma unica vez, qualquer que seja a thread
+        assertEquals(1000, approved);
+        assertEquals(90000, ledger.balanceOf("123", "FOOD"));
+    }
+
+    @Test
+    public void testRestoreIdempotencyKeys_TreatsJournaledKeysAsApproved() {
+        BalanceLedger ledger = new BalanceLedger(2);
+        ledger.load(List.of(new BenefitCategory("123", "FOOD", 10000)));
+
+        Transaction journaled = new Transaction();
+        journaled.setAccount("123");
+        journaled.setIdempotencyKey("req-1");
+        Transaction withoutKey = new Transaction();
+        withoutKey.setAccount("123");
+        ledger.restoreIdempotencyKeys(List.of(journaled, withoutKey));
+
+        assertEquals(1, ledger.idempotencyKeys());
+        assertEquals(BalanceLedger.DebitResult.DUPLICATE_APPROVED, ledger.debit("123", "FOOD", 6000, "req-1", Long.MAX_VALUE));
+        assertEquals(10000, ledger.balanceOf("123", "FOOD"));
+    }
+
+    @Test
+    public void testDebit_TimesOutWithoutApplyingWhenShardIsBusy() throws Exception {
+        LedgerShard shard = new LedgerShard(0);
+        LedgerShard.Wallet wallet = new LedgerShard.Wallet(1);
+        wallet.balances[0] = 10000;
+        Map<String, LedgerShard.Wallet> wallets = new HashMap<>();
+        wallets.put("123", wallet);
+        shard.replaceWallets(wallets);
+
+        // Ocupar a thread da shard para que o debito fique na fila alem do prazo
+        CountDownLatch release = new CountDownLatch(1);
+        Thread blocker = new Thread(() -> shard.call(() -> release.await(5, TimeUnit.SECONDS)));
+        blocker.start();
+        Thread.sleep(50);
+
+        BalanceLedger.DebitResult result = shard.call(() -> shard.debitNow("123", 0, 6000),
+                TimeUnit.MILLISECONDS.toNanos(20), BalanceLedger.DebitResult.TIMED_OUT);
+        assertEquals(BalanceLedger.DebitResult.TIMED_OUT, result);
+
+        release.countDown();
+        blocker.join();
+        assertEquals(10000, (long) shard.call(() -> shard.balanceNow("123", 0)));
+        assertEquals(BalanceLedger.DebitResult.APPROVED, shard.call(() -> shard.debitNow("123", 0, 6000),
+                TimeUnit.SECONDS.toNanos(1), BalanceLedger.DebitResult.TIMED_OUT));
+        shard.shutdown();
+    }
+
+    @Test
+    public void testDebit_ConcurrentDebitsNeverOverdraw() throws Exception {
+        BalanceLedger ledger = new BalanceLedger(4);
+        ledger.load(List.of(
+                new BenefitCategory("123", "FOOD", 100000), new BenefitCategory("123", "MEAL", 100000),
+                new BenefitCategory("456", "FOOD", 100000), new BenefitCategory("456", "MEAL", 100000)));
+
+        int threads = 16;
+        int debitsPerThread = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String account = t % 4 < 2 ? "123" : "456";
+            String category = t % 2 == 0 ? "FOOD" : "MEAL";
+            futures.add(executor.submit(() -> {
+                start.await();
+                int approved = 0;
+                for (int i = 0; i < debitsPerThread; i++) {
+                    if (ledger.debit(account, category, 7) == BalanceLedger.DebitResult.APPROVED) {
+                        approved++;
+                    }
+                }
+                return approved;
+            }));
+        }
+        start.countDown();
+
+        int approved = 0;
+        for (Future<Integer> future : futures) {
+            approved += future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // 100000 centavos por carteira / 7 = 14285 debitos aprovados em cada, restando 5 centavos
+        assertEquals(4 * 14285, approved);
+        for (String account : List.of("123", "456")) {
+            assertEquals(5, ledger.balanceOf(account, "FOOD"));
+            assertEquals(5, ledger.balanceOf(account, "MEAL"));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package br.com.autorizador.ledger;
+
+import br.com.autorizador.journal.TransactionJournal;
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.service.DebitStrategy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "autorizador.snapshot.interval-ms=3600000")
+public class BalanceSnapshotsTest {
+
+    @TempDir
+    Path dir;
+
+    @Autowired
+    private BalanceSnapshots balanceSnapshots;
+
+    @Autowired
+    private TransactionJournal transactionJournal;
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(balanceSnapshots, "path", dir.toString());
+        ReflectionTestUtils.setField(balanceSnapshots, "verifyOnRestore", false);
+    }
+
+    @Test
+    public void testSnapshotFile_RoundTrip() throws IOException {
+        Path path = dir.resolve("balances.snap");
+        BalanceSnapshotFile.Snapshot snapshot = new BalanceSnapshotFile.Snapshot(42, 7, Instant.ofEpochMilli(1_700_000_000_000L),
+                List.of(new BenefitCategory("123", "FOOD", 1050), new BenefitCategory("123", "CASH", Long.MAX_VALUE / 4),
+                        new BenefitCategory("456", "FOOD", 0)));
+        BalanceSnapshotFile.write(path, snapshot);
+
+        BalanceSnapshotFile.Snapshot read = BalanceSnapshotFile.read(path);
+        assertEquals(42, read.journalSequence());
+        assertEquals(7, read.maxWalletId());
+        assertEquals(snapshot.createdAt(), read.createdAt());
+        assertEquals(snapshot.wallets(), read.wallets());
+
+        // Um byte trocado no meio das carteiras invalida o arquivo
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> BalanceSnapshotFile.read(path));
+    }
+
+    @Test
+    public void testRestore_AppliesOnlyTheJournalTail() throws Exception {
+        String account = wallets(10000, 5000);
+        long sequence = snapshotAfter(journal(account, "FOOD", 1000));
+
+        journal(account, "FOOD", 2500);
+        journal(account, "CASH", 500);
+        String created = wallets(300, 0); // Criada depois do snapshot
+
+        List<BenefitCategory> restored = balanceSnapshots.restore().orElseThrow();
+        assertEquals(6500, balanceOf(restored, account, "FOOD"));
+        assertEquals(4500, balanceOf(restored, account, BenefitCategory.CASH_CATEGORY));
+        assertEquals(300, balanceOf(restored, created, "FOOD"));
+        assertEquals(benefitCategoryRepository.count(), restored.size());
+
+        // Ponto no tempo: os saldos na sequencia do snapshot
+        Map<List<String>, Long> atSnapshot = balanceSnapshots.rebuild(sequence).orElseThrow();
+        assertEquals(9000, atSnapshot.get(List.of(account, "FOOD")));
+        assertNull(atSnapshot.get(List.of(created, "FOOD")));
+    }
+
+    @Test
+    public void testRestore_FallsBackToOlderSnapshotWhenLatestIsCorrupted() throws Exception {
+        String account = wallets(10000, 0);
+        snapshotAfter(journal(account, "FOOD", 1000));
+        snapshotAfter(journal(account, "FOOD", 1000));
+
+        List<Path> files;
+        try (Stream<Path> entries = Files.list(dir)) {
+            files = entries.sorted().toList();
+        }
+        assertEquals(2, files.size());
+        Path latest = files.get(1);
+        byte[] bytes = Files.readAllBytes(latest);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(latest, bytes);
+
+        assertEquals(8000, balanceOf(balanceSnapshots.restore().orElseThrow(), account, "FOOD"));
+    }
+
+    @Test
+    public void testBalanceChangedOutsideJournal_IsRejectedAndAudited() throws Exception {
+        String account = wallets(10000, 0);
+        snapshotAfter(journal(account, "FOOD", 1000));
+
+        // Credito direto na tabela, sem transacao no journal
+        BenefitCategory wallet = benefitCategoryRepository.findAll().stream()
+                .filter(w -> account.equals(w.getAccount()) && "FOOD".equals(w.getCategory()))
+                .findFirst().orElseThrow();
+        wallet.setBalance(wallet.getBalance() + 700);
+        benefitCategoryRepository.save(wallet);
+
+        // Os saldos vem do snapshot e da cauda, nao da tabela; so a conferencia opcional a le
+        assertEquals(9000, balanceOf(balanceSnapshots.restore().orElseThrow(), account, "FOOD"));
+        ReflectionTestUtils.setField(balanceSnapshots, "verifyOnRestore", true);
+        assertEquals(Optional.empty(), balanceSnapshots.restore());
+
+        double before = meterRegistry.get("autorizador.snapshot.mismatches").counter().count();
+        snapshotAfter(journal(account, "FOOD", 100));
+        assertEquals(before + 1, meterRegistry.get("autorizador.snapshot.mismatches").counter().count());
+    }
+
+    @Test
+    public void testChangesOutsideJournalThatCancelOut_AreRejected() throws Exception {
+        String account = wallets(10000, 5000);
+        snapshotAfter(journal(account, "FOOD", 1000));
+
+        // Mesma quantidade de carteiras e mesma soma de saldos, mas duas carteiras erradas
+        for (BenefitCategory wallet : benefitCategoryRepository.findAll()) {
+            if (account.equals(wallet.getAccount())) {
+                wallet.setBalance(wallet.getBalance() + ("FOOD".equals(wallet.getCategory()) ? 700 : -700));
+                benefitCategoryRepository.save(wallet);
+            }
+        }
+
+        ReflectionTestUtils.setField(balanceSnapshots, "verifyOnRestore", true);
+        double before = meterRegistry.get("autorizador.snapshot.mismatches").counter().count();
+        assertEquals(Optional.empty(), balanceSnapshots.restore());
+        assertEquals(before + 2, meterRegistry.get("autorizador.snapshot.mismatches").counter().count());
+    }
+
+    @Test
+    public void testDatabaseDebitStrategy_TakesNoSnapshots() throws Exception {
+        ReflectionTestUtils.setField(balanceSnapshots, "debitStrategy", DebitStrategy.PESSIMISTIC);
+        try {
+            assertFalse(balanceSnapshots.isEnabled());
+            assertEquals(-1, balanceSnapshots.snapshot());
+            assertEquals(Optional.empty(), balanceSnapshots.restore());
+        } finally {
+            ReflectionTestUtils.setField(balanceSnapshots, "debitStrategy", DebitStrategy.LEDGER);
+        }
+    }
+
+    private long snapshotAfter(long journalSequence) {
+        long sequence = balanceSnapshots.snapshot();
+        assertEquals(journalSequence, sequence);
+        return sequence;
+    }
+
+    // Registra um debito aprovado pelo journal e espera chegar ao banco; devolve a sequencia
+    private long journal(String account, String category, long amount) throws InterruptedException {
+        Transaction transaction = new Transaction();
+        transaction.setAccount(account);
+        transaction.setCategory(category);
+        transaction.setAmount(amount);
+        transaction.setCreatedAt(Instant.now());
+        transactionJournal.append(transaction);
+        assertTrue(transactionJournal.awaitPersisted(10000));
+        return transaction.getJournalSequence();
+    }
+
+    private String wallets(long food, long cash) {
+        String account = "snap-" + UUID.randomUUID();
+        benefitCategoryRepository.saveAll(List.of(new BenefitCategory(account, "FOOD", food),
+                new BenefitCategory(account, BenefitCategory.CASH_CATEGORY, cash)));
+        return account;
+    }
+
+    private static long balanceOf(List<BenefitCategory> wallets, String account, String category) {
+        return wallets.stream()
+                .filter(wallet -> account.equals(wallet.getAccount()) && category.equals(wallet.getCategory()))
+                .findFirst().orElseThrow().getBalance();
+    }
+}
@@ -0,0 +1,104 @@
+package br.com.autorizador.ledger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyIndexTest {
+
+    @Test
+    public void testGet_KeysLiveBetweenOneAndTwoWindows() {
+        IdempotencyIndex index = new IdempotencyIndex(100, 1000, 0);
+
+        index.put(1, -1, IdempotencyIndex.APPROVED, 0);
+        index.put(2, -2, IdempotencyIndex.DECLINED, 500);
+        assertEquals(IdempotencyIndex.APPROVED, index.get(1, -1, 999));
+        assertEquals(IdempotencyIndex.DECLINED, index.get(2, -2, 999));
+
+        // Primeira troca: as chaves passam para a geracao anterior e continuam valendo
+        assertEquals(IdempotencyIndex.APPROVED, index.get(1, -1, 1000));
+        index.put(3, -3, IdempotencyIndex.APPROVED, 1500);
+
+        // Segunda troca: a geracao com 1 e 2 e descartada
+        assertEquals(IdempotencyIndex.ABSENT, index.get(1, -1, 2000));
+        assertEquals(IdempotencyIndex.ABSENT, index.get(2, -2, 2000));
+        assertEquals(IdempotencyIndex.APPROVED, index.get(3, -3, 2000));
+    }
+
+    @Test
+    public void testPut_FullGenerationRotatesEarlyAndStaysBounded() {
+        IdempotencyIndex index = new IdempotencyIndex(4, Long.MAX_VALUE, 0);
+
+        for (long key = 1; key <= 12; key++) {
+            index.put(key, -key, IdempotencyIndex.APPROVED, 0);
+        }
+
+        // Duas geracoes de no maximo 4 chaves: so as 8 mais recentes sao lembradas
+        assertEquals(8, index.size());
+        assertEquals(IdempotencyIndex.ABSENT, index.get(4, -4, 0));
+        assertEquals(IdempotencyIndex.APPROVED, index.get(5, -5, 0));
+        assertEquals(IdempotencyIndex.APPROVED, index.get(12, -12, 0));
+    }
+
+    @Test
+    public void testPrune_ReusesRetiredGenerationCleared() {
+        IdempotencyIndex index = new IdempotencyIndex(2, 1000, 0);
+        index.put(1, -1, IdempotencyIndex.APPROVED, 0);
+        index.get(1, -1, 1000);
+        index.get(1, -1, 2000);
+
+        // A geracao com a chave 1 foi descartada; limpa, vira a proxima geracao atual
+        index.prune();
+        index.get(1, -1, 3000);
+        assertEquals(IdempotencyIndex.ABSENT, index.get(1, -1, 3000));
+        index.put(2, -2, IdempotencyIndex.APPROVED, 3000);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testConfirm_PromotesOnlyPendingKeys() {
+        IdempotencyIndex index = new IdempotencyIndex(16, Long.MAX_VALUE, 0);
+        index.put(7, -7, IdempotencyIndex.PENDING, 0);
+        index.put(8, -8, IdempotencyIndex.DECLINED, 0);
+        assertEquals(IdempotencyIndex.PENDING, index.get(7, -7, 0));
+
+        index.confirm(7, -7);
+        index.confirm(8, -8);
+        assertEquals(IdempotencyIndex.APPROVED, index.get(7, -7, 0));
+        assertEquals(IdempotencyIndex.DECLINED, index.get(8, -8, 0));
+
+        // Pendente estornada: a confirmacao atrasada nao ressuscita a chave
+        index.put(9, -9, IdempotencyIndex.PENDING, 0);
+        index.release(9, -9);
+        index.confirm(9, -9);
+        assertEquals(IdempotencyIndex.ABSENT, index.get(9, -9, 0));
+    }
+
+    @Test
+    public void testRelease_KeyIsTreatedAsNew() {
+        IdempotencyIndex index = new IdempotencyIndex(16, Long.MAX_VALUE, 0);
+        index.put(7, -7, IdempotencyIndex.APPROVED, 0);
+        index.release(7, -7);
+
+        assertEquals(IdempotencyIndex.ABSENT, index.get(7, -7, 0));
+        index.put(7, -7, IdempotencyIndex.DECLINED, 0);
+        assertEquals(IdempotencyIndex.DECLINED, index.get(7, -7, 0));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testGet_SameKeyWithAnotherCheckIsAnotherEntry() {
+        IdempotencyIndex index = new IdempotencyIndex(16, Long.MAX_VALUE, 0);
+        index.put(7, 100, IdempotencyIndex.APPROVED, 0);
+
+        // Colisao do hash de 64 bits: o check diferente impede que o envio novo receba 00
+        assertEquals(IdempotencyIndex.ABSENT, index.get(7, 200, 0));
+        index.put(7, 200, IdempotencyIndex.DECLINED, 0);
+        assertEquals(IdempotencyIndex.APPROVED, index.get(7, 100, 0));
+        assertEquals(IdempotencyIndex.DECLINED, index.get(7, 200, 0));
+
+        index.release(7, 200);
+        assertEquals(IdempotencyIndex.APPROVED, index.get(7, 100, 0));
+        assertEquals(2, index.size());
+    }
+}
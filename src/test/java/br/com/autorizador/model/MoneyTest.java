@@ -0,0 +1,58 @@
+package br.com.autorizador.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testParseCents() {
+        assertEquals(10000, Money.parseCents("100"));
+        assertEquals(10000, Money.parseCents("100.00"));
+        assertEquals(10050, Money.parseCents("100.5"));
+        assertEquals(10001, Money.parseCents("100.01"));
+        assertEquals(1, Money.parseCents("0.01"));
+        assertEquals(1, Money.parseCents(".01"));
+        assertEquals(4999, Money.parseCents("49.990"));
+        assertEquals(150, Money.parseCents("+1.50"));
+    }
+
+    @Test
+    public void testParseCents_RejectsInvalidValues() {
+        assertThrows(NumberFormatException.class, () -> Money.parseCents(""));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("."));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("10.001"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("1e2"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("1,50"));
+        assertThrows(ArithmeticException.class, () -> Money.parseCents("99999999999999999999"));
+        // O valor de uma transacao e sempre positivo
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("-1.50"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("0"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("0.00"));
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("100.00", Money.format(10000));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("-1.50", Money.format(-150));
+    }
+
+    @Test
+    public void testTransactionJson_TotalAmountInCents() throws Exception {
+        Transaction transaction = objectMapper.readValue(
+                "{\"account\": \"123\", \"totalAmount\": 100.10, \"mcc\": \"5811\", \"merchant\": \"PADARIA DO ZE\"}", Transaction.class);
+        assertEquals(10010, transaction.getAmount());
+
+        assertEquals(5, objectMapper.readValue("{\"totalAmount\": \"0.05\"}", Transaction.class).getAmount());
+        assertEquals(700, objectMapper.readValue("{\"totalAmount\": 7}", Transaction.class).getAmount());
+        assertTrue(objectMapper.writeValueAsString(transaction).contains("\"amount\":100.10"));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("{\"totalAmount\": 0.001}", Transaction.class));
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("{\"totalAmount\": -1.50}", Transaction.class));
+    }
+}
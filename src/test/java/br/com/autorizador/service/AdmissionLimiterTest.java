@@ -0,0 +1,75 @@
+package br.com.autorizador.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionLimiterTest {
+
+    @Test
+    public void testTryAcquire_ShedsExcessLoadAfterQueueTimeout() {
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(2, 10);
+
+        assertTrue(admissionLimiter.tryAcquire(Deadline.after(5000)));
+        assertTrue(admissionLimiter.tryAcquire(Deadline.after(5000)));
+        assertEquals(2, admissionLimiter.inFlight());
+
+        // Sem vaga: espera o timeout da fila e recusa
+        assertFalse(admissionLimiter.tryAcquire(Deadline.after(5000)));
+        assertEquals(2, admissionLimiter.admittedCount());
+        assertEquals(1, admissionLimiter.rejectedCount());
+        assertTrue(admissionLimiter.totalQueueWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+
+        admissionLimiter.release();
+        assertTrue(admissionLimiter.tryAcquire(Deadline.after(5000)));
+    }
+
+    @Test
+    public void testTryAcquire_QueueWaitAndRejectionsAreMeters() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(1, 10, meterRegistry);
+
+        assertTrue(admissionLimiter.tryAcquire(Deadline.after(5000)));
+        assertFalse(admissionLimiter.tryAcquire(Deadline.after(5000)));
+
+        assertEquals(1, meterRegistry.get("autorizador.admission.queue-wait").timer().count());
+        assertEquals(1, meterRegistry.get("autorizador.admission.rejected").counter().count());
+        assertEquals(1, meterRegistry.get("autorizador.admission.in-flight").gauge().value());
+    }
+
+    @Test
+    public void testDefaultMaxInFlight_FollowsTheContendedResource() {
+        // Ledger: independente do pool do banco
+        assertEquals(4 * AdmissionLimiter.IN_FLIGHT_PER_SHARD, AdmissionLimiter.defaultMaxInFlight(DebitStrategy.LEDGER, 4, 10));
+        assertEquals(10, AdmissionLimiter.defaultMaxInFlight(DebitStrategy.PESSIMISTIC, 4, 10));
+        assertEquals(10, AdmissionLimiter.defaultMaxInFlight(DebitStrategy.CONDITIONAL, 4, 10));
+    }
+
+    @Test
+    public void testTryAcquire_WaitIsCappedByDeadline() {
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(1, 5000);
+        assertTrue(admissionLimiter.tryAcquire(Deadline.after(5000)));
+
+        long start = System.nanoTime();
+        assertFalse(admissionLimiter.tryAcquire(Deadline.after(20)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testTryAcquire_QueuedRequestAdmittedWhenSlotFrees() throws Exception {
+        AdmissionLimiter admissionLimiter = new AdmissionLimiter(1, 5000);
+        assertTrue(admissionLimiter.tryAcquire(Deadline.after(5000)));
+
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> admissionLimiter.tryAcquire(Deadline.after(5000)));
+        Thread.sleep(50);
+        admissionLimiter.release();
+
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(0, admissionLimiter.rejectedCount());
+        assertTrue(admissionLimiter.totalQueueWaitNanos() > 0);
+    }
+}
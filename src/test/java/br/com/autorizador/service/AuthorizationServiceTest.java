@@ -1,271 +1,441 @@
 package br.com.autorizador.service;
 
+import br.com.autorizador.journal.JournalFullException;
+import br.com.autorizador.journal.TransactionJournal;
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.AuthorizationOutcome;
+import br.com.autorizador.model.AuthorizationResult;
 import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.MccRule;
+import br.com.autorizador.model.MerchantMapping;
 import br.com.autorizador.model.Transaction;
 import br.com.autorizador.repository.BenefitCategoryRepository;
-import br.com.autorizador.repository.MerchantMappingRepository;
-import br.com.autorizador.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
-import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
-import org.springframework.transaction.TransactionTimedOutException;
-import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
 public class AuthorizationServiceTest {
 
+    private static final String ACCOUNT = "123";
+    private static final String OTHER_ACCOUNT = "456";
+
     @InjectMocks
     private AuthorizationService authorizationService;
 
     @MockBean
-    private TransactionRepository transactionRepository;
+    private TransactionJournal transactionJournal;
 
-    @MockBean
-    private MerchantMappingRepository merchantMappingRepository;
+    @Spy
+    private MerchantMatcher merchantMatcher = new MerchantMatcher();
 
     @MockBean
     private BenefitCategoryRepository benefitCategoryRepository;
 
-    @MockBean
-    private TransactionTemplate transactionTemplate;
+    @Spy
+    private BalanceLedger balanceLedger = new BalanceLedger(4);
 
-    @Mock
-    private Transaction transaction;
+    @Spy
+    private MccClassifier mccClassifier = new MccClassifier();
+
+    @Spy
+    private AuthorizationMetrics authorizationMetrics = new AuthorizationMetrics(new SimpleMeterRegistry());
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-    }
-
-    @Test
-    public void testAuthorizeTransaction_Timeout() {
-        // Configure mocks
-        when(transaction.getMcc()).thenReturn("5411");
-        when(transaction.getAmount()).thenReturn(50.0);
-        when(transaction.getMerchant()).thenReturn("");
-
-        // Simulate delay to cause timeout
-        doAnswer(invocation -> {
-            Thread.sleep(2000); // Simulate 2 seconds delay, causing the transaction to timeout
-            return Optional.of(new BenefitCategory("FOOD", 100.0));
-        }).doThrow(TransactionTimedOutException.class).when(benefitCategoryRepository).findByCategoryWithLock("FOOD");
+        // Prazo folgado: a primeira chamada em JVM fria pode passar dos 100ms padrao
+        ReflectionTestUtils.setField(authorizationService, "timeoutMs", 10000L);
+        merchantMatcher.compile(List.of());
+        loadWallets();
 
-        when(transactionTemplate.execute(any())).then(invocation -> {
-            benefitCategoryRepository.findByCategoryWithLock("FOOD");
-            return "{\"code\": \"07\"}";
-        });
+        mccClassifier.compile(List.of(new MccRule(5411, 5412, "FOOD"), new MccRule(5811, 5812, "MEAL")));
+    }
 
-        String response = authorizationService.authorizeTransaction(transaction);
-        assertEquals("{\"code\": \"07\"}", response); // Timeout specific error
+    private void loadWallets() {
+        balanceLedger.load(List.of(
+                new BenefitCategory(ACCOUNT, "FOOD", 10000),
+                new BenefitCategory(ACCOUNT, "MEAL", 10000),
+                new BenefitCategory(ACCOUNT, BenefitCategory.CASH_CATEGORY, 20000),
+                new BenefitCategory(OTHER_ACCOUNT, "FOOD", 10000),
+                new BenefitCategory(OTHER_ACCOUNT, BenefitCategory.CASH_CATEGORY, 20000)));
     }
 
     @Test
-    public void testAuthorizeTransaction_Success() {
-        // Configurar mocks
-        when(transaction.getMcc()).thenReturn("5411");
-        when(transaction.getAmount()).thenReturn(50.0);
-        when(transaction.getMerchant()).thenReturn("");
-
-        when(merchantMappingRepository.findByMerchant("Supermarket")).thenReturn(Optional.empty());
-        when(benefitCategoryRepository.findByCategoryWithLock("FOOD")).thenReturn(Optional.of(new BenefitCategory("FOOD", 100.0)));
-
-        doAnswer(invocation -> {
-            BenefitCategory category = invocation.getArgument(0);
-            category.setBalance(category.getBalance() - 50);
-            return null;
-        }).when(benefitCategoryRepository).save(any(BenefitCategory.class));
-
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(transaction);
+    public void testAuthorizeTransaction_JournalFull() {
+        Transaction transaction = transaction("5411", 5000, "");
 
-        when(transactionTemplate.execute(any())).then(invocation -> {
-            Optional<BenefitCategory> categoryOpt = benefitCategoryRepository.findByCategoryWithLock("FOOD");
+        // Simular backpressure do journal ao registrar a transacao aprovada
+        doThrow(new JournalFullException(1)).when(transactionJournal).append(anyList(), anyLong());
 
-            if (categoryOpt.isEmpty()) {
-                return "{\"code\": \"07\"}"; // Categoria não encontrada
-            }
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, response);
+        assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD")); // Debito estornado
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.JOURNAL_FULL));
+    }
 
-            BenefitCategory category = categoryOpt.get();
+    @Test
+    public void testAuthorizeTransaction_NonPositiveAmountIsDeclined() {
+        // totalAmount ausente chega como zero; negativos nao passam pelo JSON, mas podem vir de outro chamador
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, authorizationService.authorizeTransaction(transaction("5411", 0, "Supermarket")));
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, authorizationService.authorizeTransaction(transaction("5411", -5000, "Supermarket")));
+        assertEquals(List.of(AuthorizationResult.PROCESSING_ERROR, AuthorizationResult.APPROVED),
+                authorizationService.authorizeTransactions(List.of(transaction("5411", -5000, "Supermarket"), transaction("5411", 100, "Supermarket"))));
+
+        assertEquals(9900, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(3, authorizationMetrics.responseCount(AuthorizationMetrics.NO_CATEGORY, AuthorizationOutcome.INVALID_AMOUNT));
+    }
 
-            if (transaction.getAmount() > category.getBalance()) {
-                return "{\"code\": \"51\"}"; // Saldo insuficiente
-            }
+    @Test
+    public void testAuthorizeTransaction_FieldLongerThanColumnIsDeclined() {
+        // O banco recusaria a linha em toda tentativa do journal: recusado antes do debito
+        Transaction longMerchant = transaction("5411", 100, "X".repeat(Transaction.MAX_TEXT_LENGTH + 1));
+        Transaction longKey = transaction("5411", 100, "Supermarket");
+        longKey.setIdempotencyKey("k".repeat(Transaction.MAX_TEXT_LENGTH + 1));
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, authorizationService.authorizeTransaction(longMerchant));
+        assertEquals(List.of(AuthorizationResult.PROCESSING_ERROR, AuthorizationResult.APPROVED),
+                authorizationService.authorizeTransactions(List.of(longKey,
+                        transaction("5411", 100, "X".repeat(Transaction.MAX_TEXT_LENGTH)))));
+
+        assertEquals(9900, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(2, authorizationMetrics.responseCount(AuthorizationMetrics.NO_CATEGORY, AuthorizationOutcome.INVALID_FIELD));
+    }
 
-            category.setBalance(category.getBalance() - transaction.getAmount());
-            benefitCategoryRepository.save(category);
-            transactionRepository.save(transaction);
-            return "{\"code\": \"00\"}";
-        });
+    @Test
+    public void testAuthorizeTransaction_Success() {
+        Transaction transaction = transaction("5411", 5000, "Supermarket");
 
-        String response = authorizationService.authorizeTransaction(transaction);
-        assertEquals("{\"code\": \"00\"}", response); // Transação aprovada
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.APPROVED, response); // Transação aprovada
+        assertEquals(5000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        verify(transactionJournal).append(eq(List.of(transaction)), anyLong());
+        assertEquals("FOOD", transaction.getCategory());
     }
 
     @Test
     public void testAuthorizeTransaction_InsufficientBalance() {
-        // Configurar mocks
-        when(transaction.getMcc()).thenReturn("5411");
-        when(transaction.getAmount()).thenReturn(150.0); // Valor maior que o saldo
-        when(transaction.getMerchant()).thenReturn("");
-
-        when(merchantMappingRepository.findByMerchant("Supermarket")).thenReturn(Optional.empty());
-        when(benefitCategoryRepository.findByCategoryWithLock("FOOD")).thenReturn(Optional.of(new BenefitCategory("FOOD", 100.0))); // Saldo inicial de 100
-
-        doAnswer(invocation -> {
-            BenefitCategory category = invocation.getArgument(0);
-            category.setBalance(category.getBalance() - 150); // Tentativa de débito maior que o saldo
-            return null;
-        }).when(benefitCategoryRepository).save(any(BenefitCategory.class));
-
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(transaction);
+        Transaction transaction = transaction("5411", 15000, "Supermarket"); // Valor maior que o saldo
 
-        when(transactionTemplate.execute(any())).then(invocation -> {
-            Optional<BenefitCategory> categoryOpt = benefitCategoryRepository.findByCategoryWithLock("FOOD");
-
-            if (categoryOpt.isEmpty()) {
-                return "{\"code\": \"07\"}"; // Categoria não encontrada
-            }
-
-            BenefitCategory category = categoryOpt.get();
-
-            if (transaction.getAmount() > category.getBalance()) {
-                return "{\"code\": \"51\"}"; // Saldo insuficiente
-            }
-
-            category.setBalance(category.getBalance() - transaction.getAmount());
-            benefitCategoryRepository.save(category);
-            transactionRepository.save(transaction);
-            return "{\"code\": \"00\"}";
-        });
-
-        String response = authorizationService.authorizeTransaction(transaction);
-        assertEquals("{\"code\": \"51\"}", response); // Saldo insuficiente
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.INSUFFICIENT_FUNDS, response); // Saldo insuficiente
+        assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.INSUFFICIENT_FUNDS));
+        verify(transactionJournal, never()).append(anyList(), anyLong());
     }
 
     @Test
     public void testAuthorizeTransaction_UnexpectedError() {
-        // Configurar mocks
-        when(transaction.getMcc()).thenReturn("5411");
-        when(transaction.getAmount()).thenReturn(50.0);
-        when(transaction.getMerchant()).thenReturn("");
-
-        when(merchantMappingRepository.findByMerchant("Supermarket")).thenReturn(Optional.empty());
-        when(benefitCategoryRepository.findByCategoryWithLock("FOOD")).thenReturn(Optional.of(new BenefitCategory("FOOD", 100.0)));
+        Transaction transaction = transaction("5411", 5000, "Supermarket");
 
-        // Simular erro inesperado ao salvar a categoria de benefício
-        doThrow(new RuntimeException("Unexpected error")).when(benefitCategoryRepository).save(any(BenefitCategory.class));
+        // Simular erro inesperado ao registrar a transacao
+        doThrow(new RuntimeException("Unexpected error")).when(transactionJournal).append(anyList(), anyLong());
 
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(transaction);
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, response); // Erro inesperado
+        assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.EXCEPTION));
+    }
 
-        when(transactionTemplate.execute(any())).then(invocation -> {
-            Optional<BenefitCategory> categoryOpt = benefitCategoryRepository.findByCategoryWithLock("FOOD");
+    @Test
+    public void testAuthorizeTransaction_CategoryNotFound() {
+        Transaction transaction = transaction("5411", 5000, "Supermarket");
 
-            if (categoryOpt.isEmpty()) {
-                return "{\"code\": \"07\"}"; // Categoria não encontrada
-            }
+        balanceLedger.load(List.of(new BenefitCategory(ACCOUNT, BenefitCategory.CASH_CATEGORY, 20000))); // Categoria FOOD inexistente
 
-            BenefitCategory category = categoryOpt.get();
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, response); // Categoria não encontrada
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.UNKNOWN_CATEGORY));
+        verify(transactionJournal, never()).append(anyList(), anyLong());
+    }
 
-            if (transaction.getAmount() > category.getBalance()) {
-                return "{\"code\": \"51\"}"; // Saldo insuficiente
-            }
+    @Test
+    public void testAuthorizeTransaction_CorrectedMcc() {
+        Transaction transaction = transaction("9999", 5000, "UBER EATS                   SAO PAULO BR"); // MCC original que será corrigido
 
-            // Este ponto irá lançar a exceção simulada
-            category.setBalance(category.getBalance() - transaction.getAmount());
-            benefitCategoryRepository.save(category);
-            transactionRepository.save(transaction);
-            return "{\"code\": \"00\"}";
-        });
+        merchantMatcher.compile(List.of(mapping("Uber Eats", "5812"), mapping("UBER", "5411")));
 
-        String response = authorizationService.authorizeTransaction(transaction);
-        assertEquals("{\"code\": \"07\"}", response); // Erro inesperado
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.APPROVED, response); // Transação aprovada com MCC corrigido
+        assertEquals("5812", transaction.getMcc());
+        assertEquals(5000, balanceLedger.balanceOf(ACCOUNT, "MEAL"));
+        assertEquals(20000, balanceLedger.balanceOf(ACCOUNT, BenefitCategory.CASH_CATEGORY));
     }
 
     @Test
-    public void testAuthorizeTransaction_CategoryNotFound() {
-        // Configurar mocks
-        when(transaction.getMcc()).thenReturn("5411");
-        when(transaction.getAmount()).thenReturn(50.0);
-        when(transaction.getMerchant()).thenReturn("");
+    public void testAuthorizeTransaction_NullMccFallsBackToCash() {
+        Transaction transaction = transaction(null, 5000, "Supermarket");
 
-        when(merchantMappingRepository.findByMerchant("Supermarket")).thenReturn(Optional.empty());
-        when(benefitCategoryRepository.findByCategoryWithLock("FOOD")).thenReturn(Optional.empty()); // Categoria não encontrada
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.APPROVED, response);
+        assertEquals(15000, balanceLedger.balanceOf(ACCOUNT, BenefitCategory.CASH_CATEGORY));
+    }
 
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(transaction);
+    @Test
+    public void testAuthorizeTransaction_UnknownAccount() {
+        Transaction transaction = transaction("999", "5411", 5000, "Supermarket"); // Conta sem carteira
 
-        when(transactionTemplate.execute(any())).then(invocation -> {
-            Optional<BenefitCategory> categoryOpt = benefitCategoryRepository.findByCategoryWithLock("FOOD");
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction);
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, response);
+        verify(transactionJournal, never()).append(anyList(), anyLong());
+    }
 
-            if (categoryOpt.isEmpty()) {
-                return "{\"code\": \"07\"}"; // Categoria não encontrada
-            }
+    @Test
+    public void testAuthorizeTransaction_CashFallback() {
+        ReflectionTestUtils.setField(authorizationService, "cashFallback", true);
+        try {
+            // FOOD tem 10000: 11000 sai do CASH (20000) e o journal registra a categoria CASH
+            Transaction transaction = transaction("5411", 11000, "");
+            assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(transaction));
+            assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+            assertEquals(9000, balanceLedger.balanceOf(ACCOUNT, BenefitCategory.CASH_CATEGORY));
+            assertEquals(BenefitCategory.CASH_CATEGORY, transaction.getCategory());
+            verify(transactionJournal).append(eq(List.of(transaction)), anyLong());
+            assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.APPROVED_CASH_FALLBACK));
+
+            // Nem FOOD nem CASH cobrem o valor
+            assertEquals(AuthorizationResult.INSUFFICIENT_FUNDS, authorizationService.authorizeTransaction(transaction("5411", 12000, "")));
+
+            // Falha ao registrar estorna o CASH
+            doThrow(new JournalFullException(1)).when(transactionJournal).append(anyList(), anyLong());
+            assertEquals(AuthorizationResult.PROCESSING_ERROR, authorizationService.authorizeTransaction(transaction(OTHER_ACCOUNT, "5411", 10500, "")));
+            assertEquals(10000, balanceLedger.balanceOf(OTHER_ACCOUNT, "FOOD"));
+            assertEquals(20000, balanceLedger.balanceOf(OTHER_ACCOUNT, BenefitCategory.CASH_CATEGORY));
+        } finally {
+            ReflectionTestUtils.setField(authorizationService, "cashFallback", false);
+        }
+    }
 
-            BenefitCategory category = categoryOpt.get();
+    @Test
+    public void testAuthorizeTransaction_RetryWithSameIdempotencyKey() {
+        Transaction first = transaction("5411", 6000, "");
+        first.setIdempotencyKey("gw-1");
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(first));
+        assertNotNull(first.getCreatedAt());
+
+        // Retry do gateway: mesmo codigo, sem novo debito nem nova gravacao no journal
+        Transaction retry = transaction("5411", 6000, "");
+        retry.setIdempotencyKey("gw-1");
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(retry));
+        assertEquals(4000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        verify(transactionJournal, times(1)).append(anyList(), anyLong());
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.DUPLICATE_APPROVED));
+
+        // Recusa por saldo tambem e lembrada
+        Transaction declined = transaction("5411", 6000, "");
+        declined.setIdempotencyKey("gw-2");
+        assertEquals(AuthorizationResult.INSUFFICIENT_FUNDS, authorizationService.authorizeTransaction(declined));
+        assertEquals(AuthorizationResult.INSUFFICIENT_FUNDS, authorizationService.authorizeTransaction(declined));
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.DUPLICATE_DECLINED));
+    }
 
-            if (transaction.getAmount() > category.getBalance()) {
-                return "{\"code\": \"51\"}"; // Saldo insuficiente
-            }
+    @Test
+    public void testAuthorizeTransaction_FailedAppendAllowsRetryWithSameKey() {
+        doThrow(new JournalFullException(1)).when(transactionJournal).append(anyList(), anyLong());
+        Transaction transaction = transaction("5411", 6000, "");
+        transaction.setIdempotencyKey("gw-1");
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, authorizationService.authorizeTransaction(transaction));
+
+        // O 07 nao e definitivo: o retry e autorizado de novo
+        doNothing().when(transactionJournal).append(anyList(), anyLong());
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(transaction));
+        assertEquals(4000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+    }
 
-            category.setBalance(category.getBalance() - transaction.getAmount());
-            benefitCategoryRepository.save(category);
-            transactionRepository.save(transaction);
-            return "{\"code\": \"00\"}";
-        });
+    @Test
+    public void testAuthorizeTransaction_RetryWhileOriginalIsAppendingIsNotApproved() throws Exception {
+        CountDownLatch appending = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            appending.countDown();
+            fail.await();
+            throw new JournalFullException(1);
+        }).when(transactionJournal).append(anyList(), anyLong());
+
+        Transaction original = transaction("5411", 6000, "");
+        original.setIdempotencyKey("gw-1");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<AuthorizationResult> first = executor.submit(() -> authorizationService.authorizeTransaction(original, Deadline.after(10000)));
+        assertTrue(appending.await(10, TimeUnit.SECONDS));
+
+        // O original ja debitou, mas ainda nao foi registrado: o reenvio recebe 07, nao 00
+        Transaction retry = transaction("5411", 6000, "");
+        retry.setIdempotencyKey("gw-1");
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, authorizationService.authorizeTransaction(retry));
+        assertEquals(1, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.DUPLICATE_PENDING));
+
+        // O registro do original falha: debito estornado e nenhum 00 foi dado
+        fail.countDown();
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, first.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(0, authorizationMetrics.responseCount("FOOD", AuthorizationOutcome.DUPLICATE_APPROVED));
+
+        // O proximo reenvio e autorizado como novo
+        doNothing().when(transactionJournal).append(anyList(), anyLong());
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(retry));
+        assertEquals(4000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+    }
 
-        String response = authorizationService.authorizeTransaction(transaction);
-        assertEquals("{\"code\": \"07\"}", response); // Categoria não encontrada
+    @Test
+    public void testAuthorizeTransactions_DuplicateKeyInBatchFollowsOriginal() {
+        Transaction first = transaction("5411", 3000, "");
+        first.setIdempotencyKey("gw-1");
+        Transaction repeated = transaction("5411", 3000, "");
+        repeated.setIdempotencyKey("gw-1");
+
+        assertEquals(List.of(AuthorizationResult.APPROVED, AuthorizationResult.APPROVED),
+                authorizationService.authorizeTransactions(List.of(first, repeated)));
+        assertEquals(7000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        verify(transactionJournal).append(eq(List.of(first)), anyLong());
+
+        // Se o lote nao for registrado, a repeticao acompanha o estorno do original
+        doThrow(new JournalFullException(1)).when(transactionJournal).append(anyList(), anyLong());
+        Transaction second = transaction("5411", 3000, "");
+        second.setIdempotencyKey("gw-2");
+        Transaction secondRepeated = transaction("5411", 3000, "");
+        secondRepeated.setIdempotencyKey("gw-2");
+        assertEquals(List.of(AuthorizationResult.PROCESSING_ERROR, AuthorizationResult.PROCESSING_ERROR),
+                authorizationService.authorizeTransactions(List.of(second, secondRepeated)));
+        assertEquals(7000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
     }
 
     @Test
-    public void testAuthorizeTransaction_CorrectedMcc() {
-        // Configurar mocks
-        when(transaction.getMcc()).thenReturn("9999"); // MCC original que será corrigido
-        when(transaction.getAmount()).thenReturn(50.0);
-        when(transaction.getMerchant()).thenReturn("UBER EATS                   SAO PAULO BR");
+    public void testAuthorizeTransaction_ExpiredDeadline() {
+        Transaction transaction = transaction("5411", 5000, "Supermarket");
+
+        AuthorizationResult response = authorizationService.authorizeTransaction(transaction, Deadline.after(0));
+        assertEquals(AuthorizationResult.PROCESSING_ERROR, response);
+        assertEquals(1, authorizationMetrics.responseCount(null, AuthorizationOutcome.TIMEOUT));
+        assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        verify(transactionJournal, never()).append(anyList(), anyLong());
+    }
 
-        BenefitCategory mealCategory = new BenefitCategory("MEAL", 100.0);
-        when(benefitCategoryRepository.findByCategoryWithLock("MEAL")).thenReturn(Optional.of(mealCategory));
+    @Test
+    public void testAuthorizeTransaction_CrossShardIsolation() throws Exception {
+        // As duas contas devem cair em shards diferentes
+        assertNotEquals(balanceLedger.shardOf(ACCOUNT), balanceLedger.shardOf(OTHER_ACCOUNT));
+
+        // Esgotar o saldo FOOD da primeira conta
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(transaction("5411", 10000, "")));
+        assertEquals(AuthorizationResult.INSUFFICIENT_FUNDS, authorizationService.authorizeTransaction(transaction("5411", 1, "")));
+
+        // A outra conta nao e afetada, inclusive com as duas autorizando em paralelo
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<AuthorizationResult> first = executor.submit(() -> authorizationService.authorizeTransaction(transaction("5411", 100, "")));
+        Future<AuthorizationResult> second = executor.submit(() -> authorizationService.authorizeTransaction(transaction(OTHER_ACCOUNT, "5411", 6000, "")));
+        assertEquals(AuthorizationResult.INSUFFICIENT_FUNDS, first.get());
+        assertEquals(AuthorizationResult.APPROVED, second.get());
+        executor.shutdown();
+
+        assertEquals(0, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(4000, balanceLedger.balanceOf(OTHER_ACCOUNT, "FOOD"));
+        assertEquals(20000, balanceLedger.balanceOf(OTHER_ACCOUNT, BenefitCategory.CASH_CATEGORY));
+    }
 
-        doAnswer(invocation -> {
-            BenefitCategory category = invocation.getArgument(0);
-            category.setBalance(category.getBalance() - 50);
-            return null;
-        }).when(benefitCategoryRepository).save(any(BenefitCategory.class));
+    @Test
+    public void testAuthorizeTransaction_MerchantMatchedByLongestPrefix() {
+        merchantMatcher.compile(List.of(mapping("Grocery", "5811"), mapping("Grocery Store", "5411")));
+
+        // Nome com sufixo de cidade, caixa e espacos variados cai no prefixo mais longo
+        Transaction store = transaction("9999", 100, "  grocery   STORE 0042  CURITIBA BR");
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(store));
+        assertEquals("5411", store.getMcc());
+        assertEquals("FOOD", store.getCategory());
+
+        // "GROCERY" nao casa com "GROCERYMART": o prefixo precisa terminar em fronteira de palavra
+        Transaction other = transaction("9999", 100, "GROCERYMART");
+        assertEquals(AuthorizationResult.APPROVED, authorizationService.authorizeTransaction(other));
+        assertEquals("9999", other.getMcc());
+        assertEquals(BenefitCategory.CASH_CATEGORY, other.getCategory());
+    }
 
-        when(transactionRepository.save(any(Transaction.class))).thenReturn(transaction);
+    @Test
+    public void testAuthorizeTransactions_BatchMatchesSequentialCalls() {
+
+        // Itens disputando o mesmo saldo FOOD (10000 centavos), intercalados com outras carteiras
+        List<AuthorizationResult> sequential = new ArrayList<>();
+        for (Transaction transaction : batch()) {
+            sequential.add(authorizationService.authorizeTransaction(transaction));
+        }
+        long sequentialFood = balanceLedger.balanceOf(ACCOUNT, "FOOD");
+        long sequentialOtherFood = balanceLedger.balanceOf(OTHER_ACCOUNT, "FOOD");
+
+        loadWallets();
+        clearInvocations(transactionJournal);
+        List<AuthorizationResult> batched = authorizationService.authorizeTransactions(batch());
+
+        assertEquals(List.of(AuthorizationResult.APPROVED, AuthorizationResult.APPROVED, AuthorizationResult.INSUFFICIENT_FUNDS,
+                AuthorizationResult.APPROVED, AuthorizationResult.PROCESSING_ERROR, AuthorizationResult.APPROVED,
+                AuthorizationResult.INSUFFICIENT_FUNDS), batched);
+        assertEquals(sequential, batched);
+        assertEquals(sequentialFood, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(sequentialOtherFood, balanceLedger.balanceOf(OTHER_ACCOUNT, "FOOD"));
+        verify(transactionJournal, times(1)).append(anyList(), anyLong());
+    }
+
+    @Test
+    public void testAuthorizeTransactions_FailedJournalAppendRefundsWholeBatch() {
+        doThrow(new JournalFullException(1)).when(transactionJournal).append(anyList(), anyLong());
 
-        when(transactionTemplate.execute(any())).then(invocation -> {
-            Optional<BenefitCategory> categoryOpt = benefitCategoryRepository.findByCategoryWithLock("MEAL");
+        List<AuthorizationResult> batched = authorizationService.authorizeTransactions(batch());
 
-            if (categoryOpt.isEmpty()) {
-                return "{\"code\": \"07\"}"; // Categoria não encontrada
-            }
+        assertTrue(batched.stream().noneMatch(AuthorizationResult.APPROVED::equals));
+        assertEquals(10000, balanceLedger.balanceOf(ACCOUNT, "FOOD"));
+        assertEquals(10000, balanceLedger.balanceOf(OTHER_ACCOUNT, "FOOD"));
+        assertEquals(20000, balanceLedger.balanceOf(ACCOUNT, BenefitCategory.CASH_CATEGORY));
+    }
 
-            BenefitCategory category = categoryOpt.get();
+    private static List<Transaction> batch() {
+        return List.of(
+                transaction("5411", 4000, ""),
+                transaction(OTHER_ACCOUNT, "5411", 7000, ""),
+                transaction("5411", 7000, ""),
+                transaction("5411", 6000, ""),
+                transaction("999", "5411", 100, ""),
+                transaction("9999", 15000, ""),
+                transaction("5412", 1, ""));
+    }
 
-            if (transaction.getAmount() > category.getBalance()) {
-                return "{\"code\": \"51\"}"; // Saldo insuficiente
-            }
+    private static MerchantMapping mapping(String merchant, String correctedMcc) {
+        MerchantMapping mapping = new MerchantMapping();
+        mapping.setMerchant(merchant);
+        mapping.setCorrectedMcc(correctedMcc);
+        return mapping;
+    }
 
-            category.setBalance(category.getBalance() - transaction.getAmount());
-            benefitCategoryRepository.save(category);
-            transactionRepository.save(transaction);
-            return "{\"code\": \"00\"}";
-        });
+    private static Transaction transaction(String mcc, long amount, String merchant) {
+        return transaction(ACCOUNT, mcc, amount, merchant);
+    }
 
-        String response = authorizationService.authorizeTransaction(transaction);
-        assertEquals("{\"code\": \"00\"}", response); // Transação aprovada com MCC corrigido
+    private static Transaction transaction(String account, String mcc, long amount, String merchant) {
+        Transaction transaction = new Transaction();
+        transaction.setAccount(account);
+        transaction.setMcc(mcc);
+        transaction.setAmount(amount);
+        transaction.setMerchant(merchant);
+        return transaction;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class DatabaseDebitServiceTest {
+
+    @Autowired
+    private DatabaseDebitService databaseDebitService;
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @ParameterizedTest
+    @EnumSource(value = DebitStrategy.class, names = {"PESSIMISTIC", "CONDITIONAL"})
+    public void testAuthorize_DebitsAndRecordsInOneCommit(DebitStrategy strategy) {
+        String account = wallets(10000, 5000);
+
+        assertEquals(BalanceLedger.DebitResult.APPROVED, authorize(account, "FOOD", 6000, null, false, strategy));
+        assertEquals(BalanceLedger.DebitResult.INSUFFICIENT_FUNDS, authorize(account, "FOOD", 6000, null, false, strategy));
+        assertEquals(BalanceLedger.DebitResult.UNKNOWN_CATEGORY, authorize(account, "MEAL", 1, null, false, strategy));
+        assertEquals(4000, balanceOf(account, "FOOD"));
+
+        // Fallback para CASH quando FOOD nao cobre o valor
+        assertEquals(BalanceLedger.DebitResult.APPROVED_CASH_FALLBACK, authorize(account, "FOOD", 4500, null, true, strategy));
+        assertEquals(4000, balanceOf(account, "FOOD"));
+        assertEquals(500, balanceOf(account, BenefitCategory.CASH_CATEGORY));
+
+        List<Transaction> recorded = transactionRepository.findAll().stream().filter(t -> account.equals(t.getAccount())).toList();
+        assertEquals(List.of("FOOD", BenefitCategory.CASH_CATEGORY), recorded.stream().map(Transaction::getCategory).toList());
+        assertTrue(recorded.stream().allMatch(t -> t.getCreatedAt() != null));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = DebitStrategy.class, names = {"PESSIMISTIC", "CONDITIONAL"})
+    public void testAuthorize_RetryWithSameKeyIsNotDebitedAgain(DebitStrategy strategy) {
+        String account = wallets(10000, 0);
+
+        assertEquals(BalanceLedger.DebitResult.APPROVED, authorize(account, "FOOD", 3000, "gw-1", false, strategy));
+        assertEquals(BalanceLedger.DebitResult.DUPLICATE_APPROVED, authorize(account, "FOOD", 3000, "gw-1", false, strategy));
+        assertEquals(7000, balanceOf(account, "FOOD"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = DebitStrategy.class, names = {"PESSIMISTIC", "CONDITIONAL"})
+    public void testAuthorize_ConcurrentDebitsNeverOverdraw(DebitStrategy strategy) throws Exception {
+        String account = wallets(10000, 0);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int approved = 0;
+                for (int i = 0; i < 50; i++) {
+                    if (authorize(account, "FOOD", 70, null, false, strategy) == BalanceLedger.DebitResult.APPROVED) {
+                        approved++;
+                    }
+                }
+                return approved;
+            }));
+        }
+        start.countDown();
+
+        int approved = 0;
+        for (Future<Integer> future : futures) {
+            approved += future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // 10000 / 70 = 142 debitos aprovados, restando 60 centavos
+        assertEquals(142, approved);
+        assertEquals(60, balanceOf(account, "FOOD"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = DebitStrategy.class, names = {"PESSIMISTIC", "CONDITIONAL"})
+    public void testAuthorize_ConcurrentRetriesWithSameKeyDebitOnce(DebitStrategy strategy) throws Exception {
+        String account = wallets(10000, 0);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BalanceLedger.DebitResult>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return authorize(account, "FOOD", 1000, "gw-race", false, strategy);
+            }));
+        }
+        start.countDown();
+
+        List<BalanceLedger.DebitResult> results = new ArrayList<>();
+        for (Future<BalanceLedger.DebitResult> future : futures) {
+            results.add(future.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // O indice unico garante um unico insert mesmo quando as consultas correm juntas
+        assertEquals(1, results.stream().filter(BalanceLedger.DebitResult.APPROVED::equals).count());
+        assertEquals(threads - 1, results.stream().filter(BalanceLedger.DebitResult.DUPLICATE_APPROVED::equals).count());
+        assertEquals(9000, balanceOf(account, "FOOD"));
+    }
+
+    @Test
+    public void testDebitIfSufficient_IncrementsVersion() {
+        String account = wallets(10000, 0);
+        long version = benefitCategory(account, "FOOD").getVersion();
+
+        assertEquals(1, benefitCategoryRepository.debitIfSufficient(account, "FOOD", 100));
+        assertEquals(0, benefitCategoryRepository.debitIfSufficient(account, "FOOD", 100000));
+        assertEquals(version + 1, benefitCategory(account, "FOOD").getVersion());
+    }
+
+    private BalanceLedger.DebitResult authorize(String account, String category, long amount, String idempotencyKey,
+                                                boolean cashFallback, DebitStrategy strategy) {
+        Transaction transaction = new Transaction();
+        transaction.setAccount(account);
+        transaction.setAmount(amount);
+        transaction.setIdempotencyKey(idempotencyKey);
+        return databaseDebitService.authorize(transaction, category, cashFallback, strategy, Deadline.after(10000));
+    }
+
+    // Conta nova por teste, para que os testes nao disputem as mesmas carteiras
+    private String wallets(long food, long cash) {
+        String account = "db-" + UUID.randomUUID();
+        benefitCategoryRepository.saveAll(List.of(new BenefitCategory(account, "FOOD", food),
+                new BenefitCategory(account, BenefitCategory.CASH_CATEGORY, cash)));
+        return account;
+    }
+
+    private long balanceOf(String account, String category) {
+        return benefitCategory(account, category).getBalance();
+    }
+
+    private BenefitCategory benefitCategory(String account, String category) {
+        return benefitCategoryRepository.findAll().stream()
+                .filter(wallet -> account.equals(wallet.getAccount()) && category.equals(wallet.getCategory()))
+                .findFirst().orElseThrow();
+    }
+}
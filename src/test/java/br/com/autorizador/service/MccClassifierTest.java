@@ -0,0 +1,52 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.MccRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MccClassifierTest {
+
+    @Test
+    public void testClassify_Ranges() {
+        MccClassifier classifier = new MccClassifier();
+        classifier.compile(List.of(new MccRule(5411, 5412, "FOOD"), new MccRule(5811, 5812, "MEAL")));
+
+        assertEquals("FOOD", classifier.classify("5411"));
+        assertEquals("FOOD", classifier.classify("5412"));
+        assertEquals("MEAL", classifier.classify("5811"));
+        assertEquals("MEAL", classifier.classify("5812"));
+        assertEquals("CASH", classifier.classify("5413"));
+        assertEquals("CASH", classifier.classify("0000"));
+    }
+
+    @Test
+    public void testClassify_NarrowerRuleAndPriorityWin() {
+        MccRule broad = new MccRule(5000, 5999, "MEAL");
+        MccRule narrow = new MccRule(5411, 5411, "FOOD");
+        MccRule override = new MccRule(5412, 5412, "CASH");
+        override.setPriority(1);
+        MccClassifier classifier = new MccClassifier();
+        classifier.compile(List.of(narrow, new MccRule(5400, 5500, "FOOD"), override, broad));
+
+        assertEquals("MEAL", classifier.classify("5001"));
+        assertEquals("FOOD", classifier.classify("5411"));
+        assertEquals("FOOD", classifier.classify("5450"));
+        assertEquals("CASH", classifier.classify("5412"));
+    }
+
+    @Test
+    public void testClassify_NullOrMalformedMccFallsBackToCash() {
+        MccClassifier classifier = new MccClassifier();
+        classifier.compile(List.of(new MccRule(5411, 5412, "FOOD")));
+
+        assertEquals("CASH", classifier.classify(null));
+        assertEquals("CASH", classifier.classify(""));
+        assertEquals("CASH", classifier.classify("541"));
+        assertEquals("CASH", classifier.classify("54111"));
+        assertEquals("CASH", classifier.classify("54a1"));
+        assertEquals("CASH", classifier.classify("-411"));
+    }
+}
@@ -0,0 +1,109 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.MerchantMapping;
+import br.com.autorizador.repository.MerchantMappingRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class MerchantMappingImporterTest {
+
+    @Autowired
+    private MerchantMappingImporter merchantMappingImporter;
+
+    @Autowired
+    private MerchantMappingRepository merchantMappingRepository;
+
+    @Autowired
+    private MerchantMatcher merchantMatcher;
+
+    private List<MerchantMapping> original;
+
+    @AfterEach
+    void restore() {
+        if (original != null) {
+            merchantMappingRepository.deleteAllInBatch();
+            merchantMappingRepository.saveAll(original.stream().map(mapping -> mapping(mapping.getMerchant(), mapping.getCorrectedMcc())).toList());
+            merchantMatcher.reload();
+        }
+    }
+
+    @Test
+    public void testImportCsv_MergesIntoTableAndSwapsTrie() throws Exception {
+        original = merchantMappingRepository.findAll();
+        String csv = """
+                merchant,correctedMcc
+                "UBER EATS",5812
+                "Padaria do Ze, Filial",5411
+                restaurant,5811
+                """;
+
+        assertEquals(3, merchantMappingImporter.importMappings(stream(csv), MerchantMappingImporter.Format.CSV, false));
+
+        assertEquals("5812", merchantMatcher.match("UBER EATS  SAO PAULO BR"));
+        assertEquals("5411", merchantMatcher.match("PADARIA DO ZE, FILIAL 3"));
+        assertEquals("5811", merchantMatcher.match("Restaurant"));      // Atualizado, sem duplicar
+        assertEquals("5411", merchantMatcher.match("Grocery Store"));   // Mantido
+        assertEquals(original.size() + 2, merchantMappingRepository.count());
+    }
+
+    @Test
+    public void testImportJsonLines_ReplaceKeepsOnlyTheFile() throws Exception {
+        original = merchantMappingRepository.findAll();
+        String jsonl = """
+                {"merchant": "UBER EATS", "correctedMcc": "5812"}
+                {"merchant": "IFOOD", "mcc": "5811"}
+                """;
+
+        assertEquals(2, merchantMappingImporter.importMappings(stream(jsonl), MerchantMappingImporter.Format.JSONL, true));
+
+        assertEquals(2, merchantMappingRepository.count());
+        assertEquals("5811", merchantMatcher.match("IFOOD *AGENDADO"));
+        assertNull(merchantMatcher.match("Grocery Store"));
+    }
+
+    @Test
+    public void testInvalidLine_RejectsWholeFile() {
+        int before = merchantMatcher.size();
+        long rows = merchantMappingRepository.count();
+        String csv = """
+                UBER EATS,5812
+                PADARIA,54X1
+                """;
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> merchantMappingImporter.importMappings(stream(csv), MerchantMappingImporter.Format.CSV, true));
+        assertTrue(error.getMessage().startsWith("Linha 2"));
+        assertEquals(rows, merchantMappingRepository.count());
+        assertEquals(before, merchantMatcher.size());
+        assertThrows(IllegalArgumentException.class,
+                () -> merchantMappingImporter.importMappings(stream("{\"merchant\": \"X\""), MerchantMappingImporter.Format.JSONL, false));
+
+        // Nome maior que a coluna: recusado como as demais linhas invalidas, nao no commit
+        String tooLong = "UBER EATS,5812\n" + "X".repeat(MerchantMapping.MAX_MERCHANT_LENGTH + 1) + ",5411\n";
+        error = assertThrows(IllegalArgumentException.class,
+                () -> merchantMappingImporter.importMappings(stream(tooLong), MerchantMappingImporter.Format.CSV, false));
+        assertTrue(error.getMessage().startsWith("Linha 2"));
+        assertEquals(rows, merchantMappingRepository.count());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MerchantMapping mapping(String merchant, String correctedMcc) {
+        MerchantMapping mapping = new MerchantMapping();
+        mapping.setMerchant(merchant);
+        mapping.setCorrectedMcc(correctedMcc);
+        return mapping;
+    }
+}
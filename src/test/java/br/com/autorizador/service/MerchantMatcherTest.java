@@ -0,0 +1,104 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.MerchantMapping;
+import br.com.autorizador.repository.MerchantMappingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MerchantMatcherTest {
+
+    @Test
+    public void testMatch_LongestPrefixAtWordBoundary() {
+        MerchantMatcher matcher = new MerchantMatcher();
+        matcher.compile(List.of(mapping("UBER", "4121"), mapping("Uber Eats", "5812"), mapping("UBER EATS MARKET", "5411"),
+                mapping("IFOOD*", "5812"), mapping("ATM", "6011")));
+
+        assertEquals("5812", matcher.match("UBER EATS  SAO PAULO BR"));
+        assertEquals("5812", matcher.match("  uber\teats"));
+        assertEquals("5411", matcher.match("Uber Eats Market 123"));
+        assertEquals("5812", matcher.match("UBER EATS MARK"));      // Para no meio do rotulo: volta ao ultimo valor
+        assertEquals("5812", matcher.match("UBER EATS*TRIP"));      // Pontuacao tambem e fronteira
+        assertEquals("4121", matcher.match("UBER   *TRIP HELP.UBER.COM"));
+        assertEquals("5812", matcher.match("IFOOD*RESTAURANTE"));   // Chave terminada em pontuacao
+        assertEquals("6011", matcher.match("ATM"));
+        assertNull(matcher.match("UBERLANDIA PADARIA"));            // Prefixo cortando uma palavra
+        assertNull(matcher.match("ATMOSFERA BAR"));
+        assertNull(matcher.match("PADARIA"));
+        assertNull(matcher.match(""));
+        assertNull(matcher.match("   "));
+        assertNull(matcher.match(null));
+    }
+
+    @Test
+    public void testRefresh_StaleReadDoesNotReplaceNewerTrie() throws Exception {
+        MerchantMatcher matcher = new MerchantMatcher();
+        MerchantMappingRepository repository = mock(MerchantMappingRepository.class);
+        ReflectionTestUtils.setField(matcher, "merchantMappingRepository", repository);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(repository.findAll()).thenAnswer(invocation -> {
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(mapping("UBER EATS", "4121"));
+        });
+
+        // A recarga periodica le o banco antes da importacao e termina depois dela
+        CompletableFuture<Void> reload = CompletableFuture.runAsync(matcher::reload);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        matcher.compile(List.of(mapping("UBER EATS", "5812")));
+        release.countDown();
+        reload.get(5, TimeUnit.SECONDS);
+
+        assertEquals("5812", matcher.match("UBER EATS SAO PAULO BR"));
+    }
+
+    @Test
+    public void testCompile_FirstMappingWinsAndSwapReplacesEverything() {
+        MerchantMatcher matcher = new MerchantMatcher();
+        assertEquals(2, matcher.compile(List.of(mapping("Grocery Store", "5411"), mapping(" GROCERY   store", "5812"),
+                mapping("Restaurant", "5812"), mapping("   ", "5411"), mapping("Sem MCC", null))));
+        assertEquals("5411", matcher.match("grocery store"));
+        assertEquals(List.of("GROCERY STORE", "RESTAURANT"), matcher.merchants(10));
+
+        matcher.compile(List.of(mapping("Restaurant", "5811")));
+        assertNull(matcher.match("grocery store"));
+        assertEquals("5811", matcher.match("RESTAURANT 12"));
+        assertEquals(1, matcher.size());
+    }
+
+    @Test
+    public void testMatch_ManyMerchantsAgreeWithExhaustiveSearch() {
+        List<MerchantMapping> mappings = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            mappings.add(mapping("LOJA " + Integer.toString(i, 7) + (i % 3 == 0 ? " FILIAL" : ""), String.format("%04d", i)));
+        }
+        MerchantMatcher matcher = new MerchantMatcher();
+        assertEquals(2000, matcher.compile(mappings));
+
+        for (int i = 0; i < 2000; i++) {
+            String name = "LOJA " + Integer.toString(i, 7);
+            // O nome sem FILIAL so existe para i nao multiplo de 3; com sufixo, vale o mais longo
+            String expected = i % 3 == 0 ? null : String.format("%04d", i);
+            assertEquals(expected, matcher.match(name + " CENTRO"), name);
+            if (i % 3 == 0) {
+                assertEquals(String.format("%04d", i), matcher.match(name + " filial centro"), name);
+            }
+        }
+    }
+
+    private static MerchantMapping mapping(String merchant, String correctedMcc) {
+        MerchantMapping mapping = new MerchantMapping();
+        mapping.setMerchant(merchant);
+        mapping.setCorrectedMcc(correctedMcc);
+        return mapping;
+    }
+}
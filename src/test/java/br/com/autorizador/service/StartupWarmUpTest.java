@@ -0,0 +1,63 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.ledger.BalanceLedger;
+import br.com.autorizador.model.AuthorizationOutcome;
+import br.com.autorizador.model.BenefitCategory;
+import br.com.autorizador.repository.BenefitCategoryRepository;
+import br.com.autorizador.repository.TransactionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"autorizador.warmup.enabled=true", "autorizador.warmup.iterations=500"})
+public class StartupWarmUpTest {
+
+    @Autowired
+    private StartupWarmUp startupWarmUp;
+
+    @Autowired
+    private BalanceLedger balanceLedger;
+
+    @Autowired
+    private BenefitCategoryRepository benefitCategoryRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AuthorizationMetrics authorizationMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testWarmUp_ApprovesWithoutSideEffects() {
+        // O aquecimento ja rodou na subida do contexto e passou pelo registro das aprovacoes
+        assertTrue(meterRegistry.get("autorizador.authorization.stage").tag("stage", "journal_append").timer().count() > 0);
+
+        for (BenefitCategory wallet : benefitCategoryRepository.findAll()) {
+            assertEquals(wallet.getBalance(), balanceLedger.balanceOf(wallet.getAccount(), wallet.getCategory()));
+        }
+        assertTrue(transactionRepository.findAll().stream().noneMatch(t -> t.getAccount().startsWith("warmup")));
+        for (AuthorizationOutcome outcome : AuthorizationOutcome.values()) {
+            for (String category : new String[] {null, "FOOD", "MEAL", BenefitCategory.CASH_CATEGORY}) {
+                assertEquals(0, authorizationMetrics.responseCount(category, outcome));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordRequest_SetsFirstRequestGauge() {
+        startupWarmUp.recordRequest();
+        double firstRequestMs = meterRegistry.get("autorizador.startup.first-request").timeGauge().value(TimeUnit.MILLISECONDS);
+        assertTrue(firstRequestMs > 0);
+
+        startupWarmUp.recordRequest();
+        assertEquals(firstRequestMs, meterRegistry.get("autorizador.startup.first-request").timeGauge().value(TimeUnit.MILLISECONDS));
+    }
+}
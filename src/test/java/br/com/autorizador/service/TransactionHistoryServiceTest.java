@@ -0,0 +1,117 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.Transaction;
+import br.com.autorizador.model.TransactionPage;
+import br.com.autorizador.model.TransactionStatus;
+import br.com.autorizador.repository.TransactionHistoryQuery;
+import br.com.autorizador.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class TransactionHistoryServiceTest {
+
+    private static final Instant BASE = Instant.parse("2024-08-01T12:00:00Z");
+
+    @Autowired
+    private TransactionHistoryService transactionHistoryService;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testPages_NewestFirstWithoutGapsOrDuplicates() {
+        String account = "hist-" + UUID.randomUUID();
+        List<Transaction> saved = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            // Pares com o mesmo created_at: o id desempata
+            saved.add(transaction(account, "FOOD", "Loja", BASE.plusSeconds(i / 2), TransactionStatus.APPROVED));
+        }
+        transactionRepository.saveAll(saved);
+
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TransactionPage page = transactionHistoryService.find(filter(account, null, null, null), cursor, 3);
+            page.transactions().forEach(transaction -> seen.add(transaction.getId()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        List<Long> expected = saved.stream()
+                .sorted((a, b) -> a.getCreatedAt().equals(b.getCreatedAt())
+                        ? Long.compare(b.getId(), a.getId()) : b.getCreatedAt().compareTo(a.getCreatedAt()))
+                .map(Transaction::getId).toList();
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    public void testFilters_CategoryMerchantStatusAndTimeRange() {
+        String merchant = "Loja " + UUID.randomUUID();
+        transactionRepository.saveAll(List.of(
+                transaction("1", "FOOD", merchant, BASE, TransactionStatus.APPROVED),
+                transaction("2", "CASH", merchant, BASE.plusSeconds(10), TransactionStatus.APPROVED_CASH_FALLBACK),
+                transaction("3", "FOOD", merchant, BASE.plusSeconds(20), TransactionStatus.APPROVED),
+                transaction("4", "FOOD", "Outra loja", BASE.plusSeconds(30), TransactionStatus.APPROVED)));
+
+        assertEquals(List.of("3", "2", "1"), accounts(new TransactionHistoryQuery.Filter(null, null, merchant, null, null, null)));
+        assertEquals(List.of("3", "1"), accounts(new TransactionHistoryQuery.Filter(null, "FOOD", merchant, null, null, null)));
+        assertEquals(List.of("2"), accounts(new TransactionHistoryQuery.Filter(null, null, merchant,
+                TransactionStatus.APPROVED_CASH_FALLBACK, null, null)));
+        assertEquals(List.of("2"), accounts(new TransactionHistoryQuery.Filter(null, null, merchant, null,
+                BASE.plusSeconds(10), BASE.plusSeconds(20))));
+    }
+
+    @Test
+    public void testInvalidRequests_AreRejected() {
+        TransactionHistoryQuery.Filter byAccount = filter("123", null, null, null);
+        assertThrows(IllegalArgumentException.class, () -> transactionHistoryService.find(filter(null, null, null, null), null, null));
+        assertThrows(IllegalArgumentException.class, () -> transactionHistoryService.find(byAccount, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> transactionHistoryService.find(byAccount, null, 501));
+        assertThrows(IllegalArgumentException.class, () -> transactionHistoryService.find(byAccount, "nao-e-um-cursor!", null));
+        assertThrows(IllegalArgumentException.class, () -> transactionHistoryService.find(byAccount, "AAAA", null));
+
+        String cursor = TransactionHistoryService.encodeCursor(BASE.plusNanos(123_456_000), 42);
+        assertEquals(new TransactionHistoryQuery.Position(BASE.plusNanos(123_456_000), 42), TransactionHistoryService.decodeCursor(cursor));
+    }
+
+    @Test
+    public void testNoFreeSlot_RejectsWithoutQuerying() {
+        TransactionHistoryService saturated = new TransactionHistoryService(transactionRepository, transactionManager, 0, 50, 500, 2000);
+        assertThrows(TransactionHistoryBusyException.class, () -> saturated.find(filter("123", null, null, null), null, null));
+    }
+
+    private List<String> accounts(TransactionHistoryQuery.Filter filter) {
+        return transactionHistoryService.find(filter, null, null).transactions().stream().map(Transaction::getAccount).toList();
+    }
+
+    private static TransactionHistoryQuery.Filter filter(String account, String category, String merchant, TransactionStatus status) {
+        return new TransactionHistoryQuery.Filter(account, category, merchant, status, null, null);
+    }
+
+    private static Transaction transaction(String account, String category, String merchant, Instant createdAt, TransactionStatus status) {
+        Transaction transaction = new Transaction();
+        transaction.setAccount(account);
+        transaction.setCategory(category);
+        transaction.setMerchant(merchant);
+        transaction.setMcc("5411");
+        transaction.setAmount(100);
+        transaction.setCreatedAt(createdAt);
+        transaction.setStatus(status);
+        return transaction;
+    }
+}
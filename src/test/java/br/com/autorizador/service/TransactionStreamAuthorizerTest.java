@@ -0,0 +1,119 @@
+package br.com.autorizador.service;
+
+import br.com.autorizador.model.AuthorizationResult;
+import br.com.autorizador.model.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+public class TransactionStreamAuthorizerTest {
+
+    private static final String APPROVED = "{\"code\": \"00\"}";
+    private static final String DECLINED = "{\"code\": \"51\"}";
+    private static final String ERROR = "{\"code\": \"07\"}";
+
+    @Autowired
+    private TransactionStreamAuthorizer transactionStreamAuthorizer;
+
+    @MockBean
+    private AuthorizationService authorizationService;
+
+    // Tamanho de cada lote recebido pelo AuthorizationService
+    private final List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(transactionStreamAuthorizer, "chunkSize", 2);
+        ReflectionTestUtils.setField(transactionStreamAuthorizer, "ordering", TransactionStreamAuthorizer.Ordering.SEQUENTIAL);
+        when(authorizationService.newDeadline()).thenAnswer(invocation -> Deadline.after(10000));
+        // Aprova ate 100,00 e recusa acima disso
+        when(authorizationService.authorizeTransactions(anyList(), any(Deadline.class))).thenAnswer(invocation -> {
+            List<Transaction> transactions = invocation.getArgument(0);
+            chunkSizes.add(transactions.size());
+            return transactions.stream()
+                    .map(t -> t.getAmount() <= 10000 ? AuthorizationResult.APPROVED : AuthorizationResult.INSUFFICIENT_FUNDS)
+                    .toList();
+        });
+    }
+
+    @Test
+    public void testAuthorize_OneResultPerLineInInputOrder() throws IOException {
+        String input = line("10.00") + line("500.00") + "\n" + line("1.234") + line("99.99") + line("100.01");
+
+        List<String> output = authorize(input);
+
+        assertEquals(List.of(APPROVED, DECLINED, ERROR, APPROVED, DECLINED), output);
+        // O item invalido nao chega ao lote
+        assertEquals(List.of(2, 1, 1), chunkSizes);
+    }
+
+    @Test
+    public void testAuthorize_MalformedJsonEndsTheStream() throws IOException {
+        String input = line("10.00") + "{\"account\": \"123\", \"totalAmount\": }\n" + line("10.00");
+
+        assertEquals(List.of(APPROVED, ERROR), authorize(input));
+    }
+
+    @Test
+    public void testAuthorize_ConcurrentKeepsInputOrder() throws IOException {
+        ReflectionTestUtils.setField(transactionStreamAuthorizer, "ordering", TransactionStreamAuthorizer.Ordering.CONCURRENT);
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            boolean approve = i % 3 != 0;
+            input.append(line(approve ? "1.00" : "200.00"));
+            expected.add(approve ? APPROVED : DECLINED);
+        }
+
+        assertEquals(expected, authorize(input.toString()));
+        assertEquals(51, chunkSizes.size());
+    }
+
+    @Test
+    public void testAuthorize_ReadsMappedFileAcrossWindows(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("transacoes.jsonl");
+        Files.writeString(file, line("10.00") + line("500.00") + line("20.00"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Janelas de 7 bytes: todo item atravessa mais de um mapeamento
+        Map<AuthorizationResult, Long> totals;
+        try (InputStream in = new MappedFileInputStream(file, 7)) {
+            totals = transactionStreamAuthorizer.authorize(in, out);
+        }
+
+        assertEquals(List.of(APPROVED, DECLINED, APPROVED), out.toString(StandardCharsets.UTF_8).lines().toList());
+        assertEquals(Map.of(AuthorizationResult.APPROVED, 2L, AuthorizationResult.INSUFFICIENT_FUNDS, 1L), totals);
+    }
+
+    private List<String> authorize(String input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transactionStreamAuthorizer.authorize(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+
+    private static String line(String totalAmount) {
+        return "{\"account\": \"123\", \"totalAmount\": " + totalAmount + ", \"mcc\": \"5411\", \"merchant\": \"PADARIA\"}\n";
+    }
+}